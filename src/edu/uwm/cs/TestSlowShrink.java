@@ -0,0 +1,67 @@
+package edu.uwm.cs;
+
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import edu.uwm.cs.random.AbstractRandomTest;
+import edu.uwm.cs.random.Command;
+
+/**
+ * A check that shrinking finishes even when it takes much longer than
+ * the timeout for one command: every add to the SUT is slow,
+ * and its size is wrong once it has eight elements.
+ * Run with more than one processor (e.g. -XX:ActiveProcessorCount=4)
+ * so that candidates are tried by helpers.
+ * The test printed should be noted as shrunk (see "make regression-test").
+ */
+public class TestSlowShrink extends AbstractRandomTest<TestSlowShrink.Bag,TestSlowShrink.SlowBag> {
+
+	public static class Bag {
+		protected int count;
+
+		public boolean add(Integer x) {
+			++count;
+			return true;
+		}
+
+		public int size() {
+			return count;
+		}
+	}
+
+	public static class SlowBag extends Bag {
+		@Override
+		public boolean add(Integer x) {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.add(x);
+		}
+
+		@Override
+		public int size() {
+			return count >= 8 ? count+1 : count;
+		}
+	}
+
+	TestSlowShrink() {
+		super(Bag.class, SlowBag.class, "SlowBag", "b", 1000, 100);
+	}
+
+	@Override
+	protected Command<?> randomCommand(Random r) {
+		if (mainClass.size() == 0) return newCommand();
+		int i = r.nextInt(mainClass.size());
+		if (r.nextInt(8) == 0) {
+			return build(lift((Function<Bag,Integer>)Bag::size), lift((Function<SlowBag,Integer>)SlowBag::size), "size").apply(i);
+		}
+		return build(lift((BiFunction<Bag,Integer,Boolean>)Bag::add), lift((BiFunction<SlowBag,Integer,Boolean>)SlowBag::add), "add").apply(i, r.nextInt(10));
+	}
+
+	public static void main(String[] args) {
+		new TestSlowShrink().run();
+	}
+}
@@ -0,0 +1,271 @@
+package edu.uwm.cs.junit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A history of efficiency measurements kept in a local file, so that
+ * a change that makes a (reference) solution slower can be noticed.
+ * Recording is opt-in: {@link EfficiencyTestCase} appends to the history
+ * only if the system property edu.uwm.cs.history names the file.
+ * Each line of the file records one measurement:
+ * <pre>
+ * time fingerprint test median-nanos MAD-nanos iterations nanos-per-unit
+ * </pre>
+ * separated by tabs.  The fingerprint is a checksum of the compiled code
+ * on the class path (including the reference solution, wherever it is),
+ * so that measurements of the same code can be told apart
+ * from measurements after a change.  The time per calibrated unit
+ * is recorded so that measurements from different machines can be compared.
+ * <p>
+ * Running this class as a program reads the history and reports,
+ * for each test, the latest measurement against the rolling baseline
+ * of earlier measurements, flagging significant regressions.
+ */
+public class EfficiencyHistory {
+	public static final String PROPERTY = "edu.uwm.cs.history";
+
+	/** Number of previous measurements in the rolling baseline. */
+	public static final int BASELINE_SIZE = 10;
+	/** Minimum number of previous measurements to compare against. */
+	public static final int MIN_BASELINE = 3;
+	/** Smallest slowdown (as a ratio) considered a regression. */
+	public static final double MIN_RATIO = 1.2;
+	/** Number of (scaled) MADs above the baseline considered significant. */
+	public static final double SIGNIFICANCE = 3.0;
+
+	/**
+	 * One line of the history.
+	 */
+	public static class Entry {
+		final long time;
+		final String fingerprint;
+		final String test;
+		final double median;
+		final double mad;
+		final int iterations;
+		final double nanosPerUnit;
+
+		Entry(long time, String fp, String test, double median, double mad, int n, double npu) {
+			this.time = time;
+			this.fingerprint = fp;
+			this.test = test;
+			this.median = median;
+			this.mad = mad;
+			this.iterations = n;
+			this.nanosPerUnit = npu;
+		}
+
+		/**
+		 * Return the median time in calibrated units, if the machine
+		 * was calibrated, otherwise in nanoseconds.
+		 * @return median time normalized for comparison
+		 */
+		public double getNormalized() {
+			return nanosPerUnit > 0 ? median / nanosPerUnit : median;
+		}
+
+		@Override
+		public String toString() {
+			return time + "\t" + fingerprint + "\t" + test + "\t" + Math.round(median) + "\t" +
+					Math.round(mad) + "\t" + iterations + "\t" + Math.round(nanosPerUnit);
+		}
+
+		static Entry parse(String line) {
+			String[] parts = line.split("\t");
+			if (parts.length != 7) return null;
+			try {
+				return new Entry(Long.parseLong(parts[0]), parts[1], parts[2],
+						Double.parseDouble(parts[3]), Double.parseDouble(parts[4]),
+						Integer.parseInt(parts[5]), Double.parseDouble(parts[6]));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+
+	private static final Map<Class<?>,String> fingerprints = new LinkedHashMap<>();
+
+	/**
+	 * Compute a checksum of the compiled code that a test may use:
+	 * the class files in each directory and each jar file of the class path,
+	 * and of the location the test class was loaded from, if that is not on the class path.
+	 * @param clazz class to compute fingerprint for
+	 * @return fingerprint as a hexadecimal string
+	 */
+	public static synchronized String fingerprint(Class<?> clazz) {
+		String result = fingerprints.get(clazz);
+		if (result != null) return result;
+		Set<File> roots = new LinkedHashSet<>();
+		for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+			if (!entry.isEmpty()) roots.add(new File(entry).getAbsoluteFile());
+		}
+		try {
+			CodeSource source = clazz.getProtectionDomain().getCodeSource();
+			if (source != null && source.getLocation() != null) {
+				roots.add(new File(source.getLocation().toURI()).getAbsoluteFile());
+			}
+		} catch (URISyntaxException|IllegalArgumentException|SecurityException e) {
+			// not loaded from a file
+		}
+		CRC32 crc = new CRC32();
+		for (File root : roots) {
+			try {
+				checksum(crc, root, root);
+			} catch (IOException e) {
+				// use what we have
+			}
+		}
+		result = String.format("%08x", crc.getValue());
+		fingerprints.put(clazz, result);
+		return result;
+	}
+
+	private static void checksum(CRC32 crc, File root, File file) throws IOException {
+		if (file.isDirectory()) {
+			File[] files = file.listFiles();
+			if (files == null) return;
+			Arrays.sort(files);
+			for (File f : files) {
+				checksum(crc, root, f);
+			}
+			return;
+		}
+		if (file != root && !file.getName().endsWith(".class")) return;
+		crc.update((file == root ? file.getName() : file.getPath().substring(root.getPath().length())).getBytes());
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) > 0) crc.update(buf, 0, n);
+		}
+	}
+
+	/**
+	 * Return whether measurements should be recorded.
+	 * @return whether the history file has been given
+	 */
+	public static boolean isEnabled() {
+		return System.getProperty(PROPERTY) != null;
+	}
+
+	/**
+	 * Append a measurement to the history file, if one has been given.
+	 * Problems writing the file are reported but otherwise ignored.
+	 * @param testClass class of the test that made the measurement
+	 * @param m measurement to record
+	 * @param nanosPerUnit length of a calibrated unit on this machine
+	 */
+	public static synchronized void record(Class<?> testClass, EfficiencyTestCase.Measurement m, double nanosPerUnit) {
+		String filename = System.getProperty(PROPERTY);
+		if (filename == null) return;
+		Entry e = new Entry(System.currentTimeMillis(), fingerprint(testClass),
+				testClass.getName() + "." + m.getName(), m.getMedianNanos(), m.getMADNanos(),
+				m.getNanos().length, nanosPerUnit);
+		try (PrintWriter pw = new PrintWriter(new FileWriter(filename, true))) {
+			pw.println(e);
+		} catch (IOException ex) {
+			System.err.println("Could not record efficiency history: " + ex);
+		}
+	}
+
+	/**
+	 * Read all the entries of a history file, grouped by test.
+	 * Malformed lines are ignored.
+	 * @param filename file to read
+	 * @return map from test name to entries in the order recorded
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Map<String,List<Entry>> read(String filename) throws IOException {
+		Map<String,List<Entry>> result = new LinkedHashMap<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+			String in;
+			while ((in = br.readLine()) != null) {
+				Entry e = Entry.parse(in);
+				if (e == null) continue;
+				result.computeIfAbsent(e.test, k -> new ArrayList<>()).add(e);
+			}
+		}
+		return result;
+	}
+
+	private static double median(double[] xs) {
+		double[] sorted = xs.clone();
+		Arrays.sort(sorted);
+		int n = sorted.length;
+		if (n % 2 == 1) return sorted[n/2];
+		return (sorted[n/2-1] + sorted[n/2]) / 2;
+	}
+
+	/**
+	 * Compare the last entry against the rolling baseline of
+	 * the entries before it.  The latest measurement is a regression
+	 * if it is at least {@link #MIN_RATIO} times the baseline median, and more than
+	 * {@link #SIGNIFICANCE} scaled median absolute deviations above it,
+	 * where the deviation includes the noise of the latest measurement.
+	 * @param entries entries for one test, in the order recorded
+	 * @return description of the regression, or null if none (or too little history)
+	 */
+	public static String checkRegression(List<Entry> entries) {
+		int n = entries.size();
+		if (n <= MIN_BASELINE) return null;
+		Entry latest = entries.get(n-1);
+		List<Entry> baseline = entries.subList(Math.max(0, n-1-BASELINE_SIZE), n-1);
+		double[] values = new double[baseline.size()];
+		for (int i=0; i < values.length; ++i) {
+			values[i] = baseline.get(i).getNormalized();
+		}
+		double center = median(values);
+		if (center <= 0) return null; // too fast to measure: no ratio to compare
+		double[] deviations = new double[values.length];
+		for (int i=0; i < values.length; ++i) {
+			deviations[i] = Math.abs(values[i] - center);
+		}
+		double spread = 1.4826 * median(deviations);
+		double noise = latest.nanosPerUnit > 0 ? latest.mad / latest.nanosPerUnit : latest.mad;
+		double value = latest.getNormalized();
+		if (value < MIN_RATIO * center) return null;
+		if (value - center <= SIGNIFICANCE * Math.max(spread, noise)) return null;
+		return String.format("%.2fx slower than baseline of %d (fingerprint %s, was %s)",
+				value / center, values.length, latest.fingerprint, baseline.get(baseline.size()-1).fingerprint);
+	}
+
+	/**
+	 * Report on a history file: for each test, the latest
+	 * measurement, the baseline, and whether it is a regression.
+	 * @param args name of history file (or else the value of the system property)
+	 * @throws IOException if the file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		String filename = args.length > 0 ? args[0] : System.getProperty(PROPERTY);
+		if (filename == null) {
+			System.err.println("Usage: java " + EfficiencyHistory.class.getName() + " history-file");
+			System.exit(1);
+		}
+		boolean ok = true;
+		for (Map.Entry<String,List<Entry>> e : read(filename).entrySet()) {
+			List<Entry> entries = e.getValue();
+			Entry latest = entries.get(entries.size()-1);
+			String problem = checkRegression(entries);
+			System.out.println(String.format("%s: median %.3f ms (%d runs)%s", e.getKey(),
+					latest.median/1e6, entries.size(), problem == null ? "" : "  REGRESSION: " + problem));
+			if (problem != null) ok = false;
+		}
+		System.exit(ok ? 0 : 1);
+	}
+}
@@ -1,5 +1,20 @@
 package edu.uwm.cs.junit;
 
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+
+import edu.uwm.cs.util.Footprint;
+import edu.uwm.cs.util.Statistics;
+import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
 public class EfficiencyTestCase extends TestCase {
@@ -26,4 +41,732 @@ public class EfficiencyTestCase extends TestCase {
 		}
 		startMillis = 0;
 	}
+
+	public static final int DEFAULT_WARMUP = 5;
+	public static final int DEFAULT_ITERATIONS = 11;
+
+	/**
+	 * The times taken by repeated executions of some code,
+	 * after warm-up executions that were not timed.
+	 * The median is the statistic to compare against a budget:
+	 * unlike the mean it is not affected by a few slow runs.
+	 */
+	public static class Measurement {
+		private final String name;
+		private final long[] nanos;
+		private final long[] gcNanos;
+		private final long[] jitNanos;
+		private final int retries;
+
+		Measurement(String n, long[] times, long[] gc, long[] jit, int r) {
+			name = n;
+			nanos = times;
+			gcNanos = gc;
+			jitNanos = jit;
+			retries = r;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Return the times of each timed execution.
+		 * @return array of times in nanoseconds (a copy)
+		 */
+		public long[] getNanos() {
+			return nanos.clone();
+		}
+
+		public long getMinNanos() {
+			return Statistics.min(nanos);
+		}
+
+		public double getMedianNanos() {
+			return Statistics.median(nanos);
+		}
+
+		/**
+		 * Return the median absolute deviation of the times,
+		 * a measure of how noisy the measurement was.
+		 * @return MAD in nanoseconds
+		 */
+		public double getMADNanos() {
+			return Statistics.mad(nanos);
+		}
+
+		public double getMedianMillis() {
+			return getMedianNanos() / 1_000_000;
+		}
+
+		/**
+		 * Return the time spent in garbage collection during each timed execution.
+		 * The JVM reports this with only millisecond resolution.
+		 * @return array of times in nanoseconds (a copy)
+		 */
+		public long[] getGCNanos() {
+			return gcNanos.clone();
+		}
+
+		/**
+		 * Return the time the JIT compiler spent compiling during each timed execution.
+		 * The JVM reports this with only millisecond resolution.
+		 * @return array of times in nanoseconds (a copy)
+		 */
+		public long[] getJITNanos() {
+			return jitNanos.clone();
+		}
+
+		/**
+		 * Return how many executions were discarded and rerun because
+		 * garbage collection or compilation took too much of their time.
+		 * @return number of retries
+		 */
+		public int getRetries() {
+			return retries;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%s: min %.3f ms, median %.3f ms, MAD %.3f ms (%d iterations)",
+					name, getMinNanos()/1e6, getMedianNanos()/1e6, getMADNanos()/1e6, nanos.length));
+			long gc = 0, jit = 0;
+			for (int i=0; i < nanos.length; ++i) {
+				gc += gcNanos[i];
+				jit += jitNanos[i];
+			}
+			if (gc > 0 || jit > 0 || retries > 0) {
+				sb.append(String.format(" [GC %.0f ms, JIT %.0f ms, %d retries]", gc/1e6, jit/1e6, retries));
+			}
+			return sb.toString();
+		}
+	}
+
+	public static final int DEFAULT_NOISE_RETRIES = 3;
+	public static final double DEFAULT_NOISE_FRACTION = 0.1;
+
+	/**
+	 * How many times {@link #measure(String, int, int, Runnable)} reruns
+	 * an execution polluted by garbage collection or compilation.
+	 */
+	protected int noiseRetries = DEFAULT_NOISE_RETRIES;
+
+	/**
+	 * The fraction of an execution's time that garbage collection and
+	 * compilation together may take before the execution is considered polluted.
+	 */
+	protected double noiseFraction = DEFAULT_NOISE_FRACTION;
+
+	private static long totalGCMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			long t = gc.getCollectionTime();
+			if (t > 0) total += t;
+		}
+		return total;
+	}
+
+	private static long totalJITMillis() {
+		CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+		if (jit == null || !jit.isCompilationTimeMonitoringSupported()) return 0;
+		return jit.getTotalCompilationTime();
+	}
+
+	/**
+	 * Measure the time of the body using the default number of
+	 * warm-up and timed iterations.
+	 * @param body code to time, must do the same work each time it is run.
+	 * @return measurement
+	 * @see #measure(String, int, int, Runnable)
+	 */
+	protected Measurement measure(Runnable body) {
+		return measure(getName(), DEFAULT_WARMUP, DEFAULT_ITERATIONS, body);
+	}
+
+	/**
+	 * Measure the time to execute the body.
+	 * The body is first run several times without timing it,
+	 * so that classes are loaded and the code is compiled,
+	 * and then run several times each of which is timed.
+	 * The body must create any data structures it needs, because
+	 * it will be run repeatedly.
+	 * If garbage collection and JIT compilation take more than {@link #noiseFraction}
+	 * of a timed execution, it is run again, up to {@link #noiseRetries} times.
+	 * If the system property edu.uwm.cs.history is set, the measurement is
+	 * also appended to the {@link EfficiencyHistory} file it names.
+	 * @param name name to use when reporting the measurement
+	 * @param warmup number of untimed executions
+	 * @param iterations number of timed executions, must be positive
+	 * @param body code to time
+	 * @return measurement
+	 */
+	protected Measurement measure(String name, int warmup, int iterations, Runnable body) {
+		if (iterations < 1) throw new IllegalArgumentException("need at least one iteration");
+		for (int i=0; i < warmup; ++i) {
+			body.run();
+		}
+		long[] nanos = new long[iterations];
+		long[] gcNanos = new long[iterations];
+		long[] jitNanos = new long[iterations];
+		int retries = 0;
+		for (int i=0; i < iterations; ++i) {
+			for (int tries = 0; ; ++tries) {
+				long gcStart = totalGCMillis();
+				long jitStart = totalJITMillis();
+				long start = System.nanoTime();
+				body.run();
+				nanos[i] = System.nanoTime() - start;
+				gcNanos[i] = (totalGCMillis() - gcStart) * 1_000_000;
+				jitNanos[i] = (totalJITMillis() - jitStart) * 1_000_000;
+				if (gcNanos[i] + jitNanos[i] <= noiseFraction * nanos[i] || tries >= noiseRetries) break;
+				++retries;
+			}
+		}
+		Measurement result = new Measurement(name, nanos, gcNanos, jitNanos, retries);
+		if (System.getProperty("edu.uwm.cs.showTime") != null) {
+			System.out.println(result);
+		}
+		if (EfficiencyHistory.isEnabled()) {
+			EfficiencyHistory.record(getClass(), result, Calibration.NANOS_PER_UNIT);
+		}
+		return result;
+	}
+
+	/**
+	 * Assert that the median time of the measurement is within budget.
+	 * @param message message to use if the assertion fails
+	 * @param budgetMillis budget in milliseconds
+	 * @param m measurement to check
+	 */
+	protected void assertMedianWithin(String message, double budgetMillis, Measurement m) {
+		if (m.getMedianMillis() > budgetMillis) {
+			fail((message == null ? "" : message + ": ") + m + " exceeds budget of " + budgetMillis + " ms");
+		}
+	}
+
+	protected void assertMedianWithin(double budgetMillis, Measurement m) {
+		assertMedianWithin(null, budgetMillis, m);
+	}
+
+	/**
+	 * A tiny linked node used by the calibration kernel.
+	 */
+	private static class CalibrationNode {
+		CalibrationNode next;
+		int value;
+		CalibrationNode(int v) { value = v; }
+	}
+
+	private static final int CALIBRATION_NODES = 1 << 16;
+	private static final int CALIBRATION_WARMUP = 5;
+	private static final int CALIBRATION_ITERATIONS = 11;
+
+	/**
+	 * Work representative of student data structure code:
+	 * chasing pointers through a randomly linked list,
+	 * allocating small objects, and integer arithmetic.
+	 * @return a value depending on all the work, so it cannot be skipped
+	 */
+	private static int calibrationKernel() {
+		CalibrationNode[] nodes = new CalibrationNode[CALIBRATION_NODES];
+		for (int i=0; i < CALIBRATION_NODES; ++i) {
+			nodes[i] = new CalibrationNode(i);
+		}
+		// link in a pseudo-random order (fixed seed) so that traversal misses the cache
+		int seed = 12345;
+		for (int i=CALIBRATION_NODES-1; i > 0; --i) {
+			seed = seed * 1103515245 + 12345;
+			int j = (seed >>> 1) % (i+1);
+			CalibrationNode t = nodes[i]; nodes[i] = nodes[j]; nodes[j] = t;
+		}
+		for (int i=0; i < CALIBRATION_NODES; ++i) {
+			nodes[i].next = nodes[(i+1) % CALIBRATION_NODES];
+		}
+		int result = 0;
+		CalibrationNode p = nodes[0];
+		for (int i=0; i < 4 * CALIBRATION_NODES; ++i) {
+			result = result * 31 + (p.value ^ (result >>> 7));
+			p = p.next;
+		}
+		return result;
+	}
+
+	private static class Calibration {
+		static final double NANOS_PER_UNIT = calibrate();
+
+		private static double calibrate() {
+			String fixed = System.getProperty("edu.uwm.cs.calibration");
+			if (fixed != null) {
+				try {
+					return Double.parseDouble(fixed) * 1_000_000;
+				} catch (NumberFormatException e) {
+					System.err.println("Ignoring bad edu.uwm.cs.calibration: " + fixed);
+				}
+			}
+			int sink = 0;
+			for (int i=0; i < CALIBRATION_WARMUP; ++i) {
+				sink += calibrationKernel();
+			}
+			long[] nanos = new long[CALIBRATION_ITERATIONS];
+			for (int i=0; i < CALIBRATION_ITERATIONS; ++i) {
+				long start = System.nanoTime();
+				sink += calibrationKernel();
+				nanos[i] = System.nanoTime() - start;
+			}
+			double result = Statistics.median(nanos);
+			if (sink == 42) result += 1; // keep the work from being optimized away
+			if (System.getProperty("edu.uwm.cs.showTime") != null) {
+				System.out.println(String.format("Calibration: 1 unit = %.3f ms", result/1e6));
+			}
+			return Math.max(result, 1);
+		}
+	}
+
+	/**
+	 * Return the length of a calibrated unit of time on this machine in milliseconds.
+	 * A unit is the time this JVM takes to run a fixed calibration kernel
+	 * (pointer chasing, allocation and arithmetic), which is measured once per JVM.
+	 * Budgets given in units rather than milliseconds scale with the speed
+	 * of the machine running the tests.
+	 * The calibration can be fixed by setting the system property
+	 * edu.uwm.cs.calibration to the number of milliseconds per unit.
+	 * @return milliseconds per unit
+	 */
+	public static double getMillisPerUnit() {
+		return Calibration.NANOS_PER_UNIT / 1_000_000;
+	}
+
+	/**
+	 * Convert a budget in calibrated units to milliseconds on this machine.
+	 * @param units budget in calibrated units
+	 * @return budget in milliseconds
+	 * @see #getMillisPerUnit()
+	 */
+	public static double unitsToMillis(double units) {
+		return units * getMillisPerUnit();
+	}
+
+	/**
+	 * Assert that the median time of the measurement is within a budget
+	 * given in calibrated units.
+	 * @param message message to use if the assertion fails
+	 * @param budgetUnits budget in calibrated units
+	 * @param m measurement to check
+	 * @see #getMillisPerUnit()
+	 */
+	protected void assertMedianWithinUnits(String message, double budgetUnits, Measurement m) {
+		double budgetMillis = unitsToMillis(budgetUnits);
+		if (m.getMedianMillis() > budgetMillis) {
+			fail((message == null ? "" : message + ": ") + m + String.format(" = %.2f units exceeds budget of %s units (%.3f ms)",
+					m.getMedianMillis() / getMillisPerUnit(), budgetUnits, budgetMillis));
+		}
+	}
+
+	protected void assertMedianWithinUnits(double budgetUnits, Measurement m) {
+		assertMedianWithinUnits(null, budgetUnits, m);
+	}
+
+	/**
+	 * Growth classes for the cost of an operation as a function of a size n.
+	 * @see EfficiencyTestCase#assertGrowthAtMost(Complexity, int, int, IntConsumer)
+	 */
+	public enum Complexity {
+		CONSTANT("O(1)", 0, 0),
+		LOGARITHMIC("O(log n)", 0, 1),
+		LINEAR("O(n)", 1, 0),
+		LINEARITHMIC("O(n log n)", 1, 1),
+		QUADRATIC("O(n^2)", 2, 0),
+		CUBIC("O(n^3)", 3, 0);
+
+		private final String notation;
+		private final int power;
+		private final int logPower;
+
+		private Complexity(String s, int p, int l) {
+			notation = s;
+			power = p;
+			logPower = l;
+		}
+
+		/**
+		 * Return the value of the growth function at n.
+		 * @param n size, must be at least 2
+		 * @return growth function value
+		 */
+		public double apply(double n) {
+			return Math.pow(n, power) * Math.pow(Math.log(n), logPower);
+		}
+
+		@Override
+		public String toString() {
+			return notation;
+		}
+
+		/**
+		 * Convert big-O notation, such as "O(n log n)" or "O(n^2)", into a complexity class.
+		 * @param s string to parse, must not be null
+		 * @return complexity class for this string
+		 * @throws IllegalArgumentException if not a recognized class
+		 */
+		public static Complexity parse(String s) {
+			String key = s.replaceAll("\\s+", "").replace("\u00b2", "^2").replace("\u00b3", "^3").replace("*", "");
+			for (Complexity c : values()) {
+				String n = c.notation.replaceAll("\\s+", "");
+				if (key.equals(n) || key.equals(n.substring(2, n.length()-1))) return c;
+			}
+			throw new IllegalArgumentException("unknown complexity class: " + s);
+		}
+	}
+
+	/**
+	 * By how much the fitted exponent of the cost relative to a complexity class
+	 * may exceed zero before we decide the growth is faster than the class.
+	 */
+	public static final double DEFAULT_GROWTH_TOLERANCE = 0.3;
+	private static final int GROWTH_WARMUP = 2;
+	private static final int GROWTH_ITERATIONS = 5;
+
+	/**
+	 * Return the slope of the least squares line through the points.
+	 */
+	private static double slope(double[] xs, double[] ys) {
+		int k = xs.length;
+		double sx = 0, sy = 0;
+		for (int i=0; i < k; ++i) {
+			sx += xs[i];
+			sy += ys[i];
+		}
+		double mx = sx / k, my = sy / k;
+		double num = 0, den = 0;
+		for (int i=0; i < k; ++i) {
+			num += (xs[i] - mx) * (ys[i] - my);
+			den += (xs[i] - mx) * (xs[i] - mx);
+		}
+		return num / den;
+	}
+
+	private static int[] growthSizes(int startN, int maxN) {
+		if (startN < 2) throw new IllegalArgumentException("start size must be at least 2");
+		int k = 0;
+		for (long n = startN; n <= maxN; n *= 2) ++k;
+		if (k < 3) throw new IllegalArgumentException("need at least three sizes from " + startN + " to " + maxN);
+		int[] sizes = new int[k];
+		for (int i=0; i < k; ++i) {
+			sizes[i] = startN << i;
+		}
+		return sizes;
+	}
+
+	/**
+	 * Return the exponent of n by which the costs grow faster than the class.
+	 * The cost divided by the class's growth function is fitted
+	 * to a power of n on a log-log scale.
+	 */
+	private static double excessExponent(Complexity c, int[] sizes, double[] costs) {
+		int k = sizes.length;
+		double[] xs = new double[k];
+		double[] ys = new double[k];
+		for (int i=0; i < k; ++i) {
+			xs[i] = Math.log(sizes[i]);
+			ys[i] = Math.log(Math.max(costs[i], 1.0) / c.apply(sizes[i]));
+		}
+		return slope(xs, ys);
+	}
+
+	private void checkGrowth(String message, Complexity c, double tolerance, int[] sizes, double[] costs, String unit, double scale) {
+		double excess = excessExponent(c, sizes, costs);
+		if (excess <= tolerance) return;
+		Complexity best = c;
+		for (Complexity other : Complexity.values()) {
+			if (Math.abs(excessExponent(other, sizes, costs)) < Math.abs(excessExponent(best, sizes, costs))) best = other;
+		}
+		StringBuilder sb = new StringBuilder();
+		if (message != null) sb.append(message).append(": ");
+		sb.append(String.format("growth exceeds %s: fitted exponent %.2f (best fit %s, excess %.2f > %.2f)",
+				c, excessExponent(Complexity.CONSTANT, sizes, costs), best, excess, tolerance));
+		sb.append(String.format("%n%12s %14s %14s", "n", unit, "/" + c));
+		String row = scale == 1 ? "%n%12d %14.0f %14.6g" : "%n%12d %14.3f %14.6g";
+		for (int i=0; i < sizes.length; ++i) {
+			sb.append(String.format(row, sizes[i], costs[i] / scale, costs[i] / scale / c.apply(sizes[i])));
+		}
+		fail(sb.toString());
+	}
+
+	/**
+	 * Assert that the time for the body grows no faster than the given complexity
+	 * class.  The body is timed (as with {@link #measure(String, int, int, Runnable)})
+	 * for sizes starting at startN and doubling up to maxN.
+	 * The median times are then fit to the class and the assertion
+	 * fails if the fitted exponent of n in the time divided by the class
+	 * exceeds {@link #DEFAULT_GROWTH_TOLERANCE}.
+	 * The failure message gives the fitted exponent and the table of timings.
+	 * For example, assertGrowthAtMost("O(n log n)", 1000, 1000000, (n) -> sortRandom(n)).
+	 * @param complexity big-O notation for the complexity class
+	 * @param startN first size, at least 2
+	 * @param maxN maximum size, at least 4 times startN
+	 * @param body code to time given a size, must create the structures it needs
+	 */
+	protected void assertGrowthAtMost(String complexity, int startN, int maxN, IntConsumer body) {
+		assertGrowthAtMost(null, Complexity.parse(complexity), startN, maxN, body);
+	}
+
+	protected void assertGrowthAtMost(Complexity c, int startN, int maxN, IntConsumer body) {
+		assertGrowthAtMost(null, c, startN, maxN, body);
+	}
+
+	protected void assertGrowthAtMost(String message, Complexity c, int startN, int maxN, IntConsumer body) {
+		int[] sizes = growthSizes(startN, maxN);
+		double[] costs = new double[sizes.length];
+		for (int i=0; i < sizes.length; ++i) {
+			final int n = sizes[i];
+			costs[i] = measure(getName() + "(n=" + n + ")", GROWTH_WARMUP, GROWTH_ITERATIONS, () -> body.accept(n)).getMedianNanos();
+		}
+		checkGrowth(message, c, DEFAULT_GROWTH_TOLERANCE, sizes, costs, "time (ms)", 1e6);
+	}
+
+	/**
+	 * Assert that the number of operations counted for the body grows no faster than
+	 * the given complexity class.  This is like {@link #assertGrowthAtMost(Complexity, int, int, IntConsumer)}
+	 * but uses operation counts (e.g. comparisons) rather than times,
+	 * and so is not affected by the speed of the machine.
+	 * @param complexity big-O notation for the complexity class
+	 * @param startN first size, at least 2
+	 * @param maxN maximum size, at least 4 times startN
+	 * @param counter code that performs the operation for a size and returns the number of operations it counted
+	 */
+	protected void assertCountGrowthAtMost(String complexity, int startN, int maxN, IntToLongFunction counter) {
+		assertCountGrowthAtMost(null, Complexity.parse(complexity), startN, maxN, counter);
+	}
+
+	protected void assertCountGrowthAtMost(String message, Complexity c, int startN, int maxN, IntToLongFunction counter) {
+		int[] sizes = growthSizes(startN, maxN);
+		double[] costs = new double[sizes.length];
+		for (int i=0; i < sizes.length; ++i) {
+			costs[i] = counter.applyAsLong(sizes[i]);
+		}
+		checkGrowth(message, c, DEFAULT_GROWTH_TOLERANCE, sizes, costs, "count", 1);
+	}
+
+	public static final int DEFAULT_ALLOCATION_WARMUP = 10;
+	private static final int ALLOCATION_ITERATIONS = 5;
+
+	/**
+	 * Return the number of bytes allocated so far by the current thread.
+	 * @return number of bytes, or -1 if the JVM cannot tell us.
+	 */
+	private static long threadAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+		if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) return -1;
+		return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long allocatedBy(Runnable body) {
+		long before = threadAllocatedBytes();
+		body.run();
+		return threadAllocatedBytes() - before;
+	}
+
+	/**
+	 * Measure the number of bytes allocated by the current thread while running the body.
+	 * The body is first run several times so that the JIT compiler has
+	 * compiled it (and can avoid allocations using escape analysis).
+	 * Then the smallest of several measured runs is returned.
+	 * @param warmup number of unmeasured runs
+	 * @param body code to measure
+	 * @return bytes allocated by one run of the body, or -1 if the JVM
+	 * does not support measuring allocation.
+	 */
+	protected long measureAllocation(int warmup, Runnable body) {
+		if (threadAllocatedBytes() < 0) return -1;
+		for (int i=0; i < warmup; ++i) {
+			body.run();
+		}
+		long overhead = Long.MAX_VALUE;
+		long result = Long.MAX_VALUE;
+		for (int i=0; i < ALLOCATION_ITERATIONS; ++i) {
+			overhead = Math.min(overhead, allocatedBy(() -> {}));
+			result = Math.min(result, allocatedBy(body));
+		}
+		return Math.max(0, result - overhead);
+	}
+
+	/**
+	 * Assert that the body allocates no more than the given number of bytes
+	 * per operation, where the body performs the given number of operations.
+	 * If the JVM cannot measure allocation, a warning is printed and nothing is checked.
+	 * For example, to check that iteration does not copy:
+	 * assertAllocationAtMost("iteration", 0, n, () -> { for (Object x : coll) ; }).
+	 * @param message message to use if the assertion fails
+	 * @param bytesPerOperation budget of bytes allocated per operation
+	 * @param operations number of operations performed by the body, must be positive
+	 * @param body code to measure, run many times
+	 */
+	protected void assertAllocationAtMost(String message, double bytesPerOperation, int operations, Runnable body) {
+		long bytes = measureAllocation(DEFAULT_ALLOCATION_WARMUP, body);
+		if (bytes < 0) {
+			System.err.println("Warning: cannot measure allocation on this JVM: " + getName());
+			return;
+		}
+		double perOperation = (double)bytes / operations;
+		if (System.getProperty("edu.uwm.cs.showTime") != null) {
+			System.out.println(getName() + ": " + String.format("%.1f", perOperation) + " bytes allocated per operation");
+		}
+		if (perOperation > bytesPerOperation) {
+			fail((message == null ? "" : message + ": ") + String.format("allocated %.1f bytes per operation (%d bytes for %d operations), budget is %.1f",
+					perOperation, bytes, operations, bytesPerOperation));
+		}
+	}
+
+	protected void assertAllocationAtMost(double bytesPerOperation, int operations, Runnable body) {
+		assertAllocationAtMost(null, bytesPerOperation, operations, body);
+	}
+
+	/**
+	 * Assert that a data structure uses no more than the given number of bytes
+	 * per element, counting every object reachable from the structure
+	 * (except those of the excluded classes).
+	 * For example, assertFootprintAtMost("list", 40, 1000000, list, Integer.class)
+	 * checks the overhead of a list of a million integers not counting the integers themselves.
+	 * @param message message to use if the assertion fails
+	 * @param bytesPerElement budget of bytes per element
+	 * @param n number of elements in the structure, must be positive
+	 * @param root data structure to measure
+	 * @param excluded classes of objects not to count
+	 * @see Footprint
+	 */
+	protected void assertFootprintAtMost(String message, double bytesPerElement, int n, Object root, Class<?>... excluded) {
+		long bytes;
+		try {
+			bytes = Footprint.retainedSize(root, excluded);
+		} catch (Footprint.IncompleteException e) {
+			fail((message == null ? "" : message + ": ") + "footprint cannot be measured: " + e.getMessage());
+			return;
+		}
+		double perElement = (double)bytes / n;
+		if (System.getProperty("edu.uwm.cs.showTime") != null) {
+			System.out.println(getName() + ": " + String.format("%.1f", perElement) + " bytes per element");
+		}
+		if (perElement > bytesPerElement) {
+			fail((message == null ? "" : message + ": ") + String.format("uses %.1f bytes per element (%d bytes for %d elements), budget is %.1f",
+					perElement, bytes, n, bytesPerElement));
+		}
+	}
+
+	public static final long DEFAULT_SCALING_MILLIS = 200;
+
+	/**
+	 * Run the operation repeatedly in the given number of threads
+	 * for the given time and return the total number of operations completed per second.
+	 * All threads wait at a barrier before starting so that they run together.
+	 * @param threads number of threads, must be positive
+	 * @param millis how long to run
+	 * @param operation operation to run, given the index of the thread running it
+	 * @return throughput in operations per second
+	 */
+	protected double measureThroughput(int threads, long millis, IntConsumer operation) {
+		CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+		AtomicBoolean stop = new AtomicBoolean(false);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		long[] counts = new long[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t=0; t < threads; ++t) {
+			final int index = t;
+			workers[t] = new Thread(() -> {
+				long count = 0;
+				try {
+					barrier.await();
+					while (!stop.get()) {
+						operation.accept(index);
+						++count;
+					}
+				} catch (Throwable ex) {
+					failure.compareAndSet(null, ex);
+					stop.set(true);
+				}
+				counts[index] = count;
+			}, getName() + "-worker-" + t);
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		long start;
+		try {
+			barrier.await();
+			start = System.nanoTime();
+			Thread.sleep(millis);
+		} catch (InterruptedException|BrokenBarrierException e) {
+			Thread.currentThread().interrupt();
+			throw new AssertionFailedError("interrupted while measuring throughput");
+		} finally {
+			stop.set(true);
+		}
+		try {
+			for (Thread w : workers) {
+				w.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long elapsed = System.nanoTime() - start;
+		Throwable ex = failure.get();
+		if (ex instanceof RuntimeException) throw (RuntimeException)ex;
+		if (ex instanceof Error) throw (Error)ex;
+		if (ex != null) throw new RuntimeException(ex);
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		return total * 1e9 / elapsed;
+	}
+
+	/**
+	 * Assert that running the operation in multiple threads increases throughput
+	 * by at least the given factor.  Throughput is measured with 1, 2, 4, ...
+	 * threads up to the given maximum, after a warm-up round, and the table
+	 * of throughputs is included in the failure message
+	 * (and printed if edu.uwm.cs.showTime is set).
+	 * If the machine has fewer processors than the number of threads,
+	 * a warning is printed and nothing is checked.
+	 * For example, assertScalesAtLeast("striped map", 4, 3.0, t -> map.put(r.nextInt(), t))
+	 * requires at least three times the single-threaded throughput with four threads.
+	 * @param message message to use if the assertion fails
+	 * @param maxThreads largest number of threads to use
+	 * @param minSpeedup required ratio of throughput with maxThreads threads to throughput with one
+	 * @param operation operation to run, given the index of the thread running it.
+	 * It must be safe to run concurrently.
+	 */
+	protected void assertScalesAtLeast(String message, int maxThreads, double minSpeedup, IntConsumer operation) {
+		if (Runtime.getRuntime().availableProcessors() < maxThreads) {
+			System.err.println("Warning: only " + Runtime.getRuntime().availableProcessors() +
+					" processors, cannot check scaling to " + maxThreads + " threads: " + getName());
+			return;
+		}
+		measureThroughput(maxThreads, DEFAULT_SCALING_MILLIS, operation);
+		List<Integer> counts = new ArrayList<>();
+		for (int t=1; t < maxThreads; t *= 2) {
+			counts.add(t);
+		}
+		counts.add(maxThreads);
+		StringBuilder table = new StringBuilder();
+		double base = 0, last = 0;
+		for (int t : counts) {
+			last = measureThroughput(t, DEFAULT_SCALING_MILLIS, operation);
+			if (t == 1) base = last;
+			table.append(String.format("%n%4d threads: %12.0f ops/s  %5.2fx", t, last, last/base));
+		}
+		if (System.getProperty("edu.uwm.cs.showTime") != null) {
+			System.out.println(getName() + ":" + table);
+		}
+		double speedup = last / base;
+		if (speedup < minSpeedup) {
+			fail((message == null ? "" : message + ": ") + String.format("speedup with %d threads is only %.2fx, expected at least %.2fx",
+					maxThreads, speedup, minSpeedup) + table);
+		}
+	}
+
+	protected void assertScalesAtLeast(int maxThreads, double minSpeedup, IntConsumer operation) {
+		assertScalesAtLeast(null, maxThreads, minSpeedup, operation);
+	}
 }
@@ -17,9 +17,11 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import edu.uwm.cs.util.StackSampler;
 import junit.framework.TestCase;
 
 public class LockedTestCase extends TestCase {
@@ -367,8 +369,10 @@ public class LockedTestCase extends TestCase {
   
   static final Integer timeout = Integer.getInteger("org.junit.timeout");
   final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private volatile Thread testThread;
 
   private void doRunTest() throws Exception {
+	  testThread = Thread.currentThread();
 	  try {
 		super.runTest();
 	} catch (Throwable e) {
@@ -388,11 +392,39 @@ public class LockedTestCase extends TestCase {
 				  t = ((ExecutionException)t).getCause();
 			  }
 			  throw t;
+		  } catch (TimeoutException e) {
+			  throw timedOut();
 		  } finally {
 			  executor.shutdownNow();	
 		  }
 		}
   }
 
+  private static final int TIMEOUT_SAMPLES = 10;
+  private static final long TIMEOUT_SAMPLE_MILLIS = 50;
+  private static final int HOT_FRAMES = 5;
+
+  /**
+   * Sample the stack of the test that timed out, and
+   * return an exception that reports the hottest frames
+   * and has the stack of the test thread.
+   * @return exception to throw for the timeout
+   */
+  private TimeoutException timedOut() {
+	  String message = "test timed out after " + timeout + " ms";
+	  Thread t = testThread;
+	  if (t == null) return new TimeoutException(message);
+	  StackSampler sampler = new StackSampler(t);
+	  sampler.sample(TIMEOUT_SAMPLES, TIMEOUT_SAMPLE_MILLIS);
+	  if (sampler.getSamples() == 0) return new TimeoutException(message);
+	  StringBuilder sb = new StringBuilder(message);
+	  sb.append("; hottest frames:");
+	  for (String frame : sampler.hottest(HOT_FRAMES)) {
+		  sb.append("\n    ").append(frame);
+	  }
+	  TimeoutException result = new TimeoutException(sb.toString());
+	  result.setStackTrace(sampler.getLastStack());
+	  return result;
+  }
 
 }
@@ -1,9 +1,41 @@
 package edu.uwm.cs.junit;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
+import edu.uwm.cs.util.StackSampler;
+import edu.uwm.cs.util.Statistics;
 import edu.uwm.cs.util.TimeoutExecutor;
 import junit.framework.AssertionFailedError;
 import junit.framework.Test;
@@ -13,7 +45,7 @@ import junit.framework.TestResult;
 import junit.framework.TestSuite;
 
 public class TestRunner implements TestListener {
-	private static final String VERSION = "1.2.0";
+	private static final String VERSION = "1.5.0";
 
 	public enum Disposition {
 		PASSED, TIMEOUT, FAILURE, ERROR;
@@ -26,13 +58,41 @@ public class TestRunner implements TestListener {
 	private Map<String,Disposition> results = new LinkedHashMap<>();
 	
 	private Test currentTest;
+	private volatile Thread testThread;
 	private volatile Disposition currentDisposition;
+	private Map<String,List<String>> hotFrames = new HashMap<>(); // for timeouts
+	private long startNanos;
+	private Map<String,Double> durations = new LinkedHashMap<>(); // milliseconds
+
+	private int shardIndex = 0; // 1-based, or 0 if not sharding
+	private int shardCount = 0;
+	private String durationsFile = null;
+	private String saveDurationsFile = null;
+
+	private boolean watch = false;
+	private CountDownLatch roundDone = null; // only used in watch mode
+
+	private int repeat = 0; // 0 if not repeating
+	private int warmup = 0;
+	private double unstableRatio = DEFAULT_UNSTABLE_RATIO;
+	private boolean measuring = true; // false during warm-up runs
+	private Map<String,List<Disposition>> repeatedDispositions = new HashMap<>();
+	private Map<String,List<Long>> repeatedNanos = new HashMap<>();
+
+	/**
+	 * A repeated test is flagged as unstable if its 95th percentile
+	 * duration is more than this factor times its median duration.
+	 */
+	public static final double DEFAULT_UNSTABLE_RATIO = 1.5;
+	private static final long UNSTABLE_MIN_NANOS = 1_000_000; // smaller variations are noise
 	
 	@Override
 	public void startTest(Test test) {
 		currentTest = test;
+		testThread = Thread.currentThread();
 		if (timeout != null && !timeout.defer(timeoutMillis)) return;
 		currentDisposition = Disposition.PASSED;
+		startNanos = System.nanoTime();
 	}
 
 	@Override
@@ -55,17 +115,33 @@ public class TestRunner implements TestListener {
 
 	@Override
 	public void endTest(Test test) {
+		long nanos = System.nanoTime() - startNanos;
 		if (timeout != null && !timeout.defer(timeoutMillis)) return;
 		results.put(test.toString(), currentDisposition);
+		durations.put(getTestName(test), nanos / 1_000_000.0);
+		if (repeat > 0 && measuring) {
+			repeatedDispositions.computeIfAbsent(test.toString(), (k) -> new ArrayList<>()).add(currentDisposition);
+			repeatedNanos.computeIfAbsent(test.toString(), (k) -> new ArrayList<>()).add(nanos);
+		}
+	}
+
+	private static String getTestName(Test test) {
+		if (test instanceof TestCase) return ((TestCase)test).getName();
+		return stripClass(test.toString());
+	}
+
+	private static String stripClass(String testName) {
+		int paren = testName.indexOf('(');
+		if (paren > 0) testName = testName.substring(0, paren);
+		return testName;
 	}
 
 	private void printResults() {
 		System.out.println("\n==========");
 		for (Map.Entry<String,Disposition> e : results.entrySet()) {
-			String testName = e.getKey();
-			int paren = testName.indexOf('(');
-			if (paren > 0) testName = testName.substring(0, paren);
-			System.out.println(testName + ": " + e.getValue());
+			System.out.println(stripClass(e.getKey()) + ": " + e.getValue());
+			printHotFrames(e.getKey());
+			printRepeatedStatistics(e.getKey());
 		}
 		if (ok) {
 			// fake standard runner:
@@ -75,54 +151,508 @@ public class TestRunner implements TestListener {
 		}
 	}
 	
+	private void printHotFrames(String testName) {
+		List<String> frames = hotFrames.get(testName);
+		if (frames == null) return;
+		System.out.println("    hottest frames:");
+		for (String frame : frames) {
+			System.out.println("    " + frame);
+		}
+	}
+
+	private static String formatMillis(double nanos) {
+		return String.format("%.3f ms", nanos / 1_000_000);
+	}
+
+	/**
+	 * Print the pass rate and duration statistics of a repeated test.
+	 * The test is flagged as unstable if its outcome varied or if its
+	 * duration varied too much (and not just by a fraction of a millisecond).
+	 */
+	private void printRepeatedStatistics(String testName) {
+		List<Disposition> dispositions = repeatedDispositions.get(testName);
+		if (dispositions == null) return;
+		int passed = Collections.frequency(dispositions, Disposition.PASSED);
+		long[] nanos = Statistics.toArray(repeatedNanos.get(testName));
+		double median = Statistics.median(nanos);
+		long p95 = Statistics.quantile(nanos, 0.95);
+		boolean unstable = new HashSet<>(dispositions).size() > 1 ||
+				(p95 > unstableRatio * median && p95 - median > UNSTABLE_MIN_NANOS);
+		System.out.println("    " + (unstable ? "UNSTABLE: " : "") + passed + "/" + dispositions.size() + " passed" +
+				", min " + formatMillis(Statistics.min(nanos)) + ", median " + formatMillis(median) + ", p95 " + formatMillis(p95));
+	}
+
+	private static final int TIMEOUT_SAMPLES = 10;
+	private static final long TIMEOUT_SAMPLE_MILLIS = 50;
+	private static final int HOT_FRAMES = 5;
+
 	private void timeoutTest() {
+		// Find where the test is stuck before reporting it.
+		StackSampler sampler = new StackSampler(testThread);
+		sampler.sample(TIMEOUT_SAMPLES, TIMEOUT_SAMPLE_MILLIS);
+		if (sampler.getSamples() > 0) {
+			hotFrames.put(currentTest.toString(), sampler.hottest(HOT_FRAMES));
+		}
 		currentDisposition = Disposition.TIMEOUT;
 		results.put(currentTest.toString(), Disposition.TIMEOUT);
 		ok = false;
+		if (roundDone != null) {
+			// watch mode: abandon the stuck test thread and keep watching
+			roundDone.countDown();
+			return;
+		}
 		printResults();
 		System.exit(1);
 	}
 
-	private void doRun(Class<?> testClass) {
+	/**
+	 * Return the shard (0-based) that a test belongs to using a hash of its name.
+	 * The hash does not depend on the JVM, so that every shard process
+	 * agrees on the partition without communicating.
+	 * @param testName name of the test method
+	 * @param n number of shards, must be positive
+	 * @return shard number in the range [0,n)
+	 */
+	static int hashShard(String testName, int n) {
+		CRC32 crc = new CRC32();
+		crc.update(testName.getBytes(StandardCharsets.UTF_8));
+		return (int)(crc.getValue() % n);
+	}
+
+	/**
+	 * Assign tests to shards so that the recorded durations are balanced.
+	 * Longest tests are placed first, each in the shard with the least total so far.
+	 * Tests without a recorded duration are given the average duration.
+	 * The assignment only depends on the names and the durations,
+	 * so every shard process computes the same one.
+	 * @param testNames names of tests in suite order
+	 * @param millis recorded durations, must not be null
+	 * @param n number of shards, must be positive
+	 * @return map from test name to shard number (0-based)
+	 */
+	static Map<String,Integer> balanceShards(List<String> testNames, Map<String,Double> millis, int n) {
+		double total = 0;
+		int known = 0;
+		for (String name : testNames) {
+			Double d = millis.get(name);
+			if (d != null) {
+				total += d;
+				++known;
+			}
+		}
+		final double guess = known == 0 ? 1.0 : total / known;
+		List<String> sorted = new ArrayList<>(testNames);
+		Collections.sort(sorted, (s1,s2) -> {
+			int c = Double.compare(millis.getOrDefault(s2, guess), millis.getOrDefault(s1, guess));
+			if (c != 0) return c;
+			return s1.compareTo(s2);
+		});
+		double[] load = new double[n];
+		Map<String,Integer> result = new HashMap<>();
+		for (String name : sorted) {
+			int best = 0;
+			for (int i=1; i < n; ++i) {
+				if (load[i] < load[best]) best = i;
+			}
+			load[best] += millis.getOrDefault(name, guess);
+			result.put(name, best);
+		}
+		return result;
+	}
+
+	private static Map<String,Double> readDurations(String filename) throws IOException {
+		Map<String,Double> result = new HashMap<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+			String in;
+			while ((in = br.readLine()) != null) {
+				int eqi = in.lastIndexOf('=');
+				if (eqi <= 0) continue;
+				try {
+					result.put(in.substring(0, eqi), Double.parseDouble(in.substring(eqi+1)));
+				} catch (NumberFormatException e) {
+					System.err.println("Ignoring bad duration line: " + in);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void writeDurations(String filename) throws IOException {
+		Map<String,Double> all = new LinkedHashMap<>();
+		if (new File(filename).canRead()) {
+			// keep durations recorded by other shards
+			all.putAll(readDurations(filename));
+		}
+		all.putAll(durations);
+		try (PrintWriter pw = new PrintWriter(new FileWriter(filename))) {
+			for (Map.Entry<String,Double> e : all.entrySet()) {
+				pw.println(e.getKey() + "=" + String.format("%.3f", e.getValue()));
+			}
+		}
+	}
+
+	private List<Test> selectTests(TestSuite suite, String name) {
+		List<Test> selected = new ArrayList<>();
+		Enumeration<Test> tests = suite.tests();
+		while (tests.hasMoreElements()) {
+			Test t = tests.nextElement();
+			if (name == null) {
+				selected.add(t);
+			} else if (t instanceof TestCase) {
+				TestCase c = (TestCase)t;
+				if (name.equals(c.getName())) {
+					selected.add(t);
+				}
+			}
+		}
+		if (shardCount == 0) return selected;
+		Map<String,Integer> assignment = null;
+		if (durationsFile != null) {
+			List<String> names = new ArrayList<>();
+			for (Test t : selected) {
+				names.add(getTestName(t));
+			}
+			try {
+				assignment = balanceShards(names, readDurations(durationsFile), shardCount);
+			} catch (IOException e) {
+				System.err.println("Cannot read durations, using hash shards: " + e);
+			}
+		}
+		List<Test> mine = new ArrayList<>();
+		for (Test t : selected) {
+			String testName = getTestName(t);
+			int shard = assignment == null ? hashShard(testName, shardCount) : assignment.get(testName);
+			if (shard == shardIndex-1) mine.add(t);
+		}
+		System.out.println("Shard " + shardIndex + "/" + shardCount + " runs " + mine.size() + " of " + selected.size() + " tests.");
+		return mine;
+	}
+	
+	/**
+	 * Run the selected tests.
+	 * @return false if the tests timed out
+	 */
+	private boolean runTests(Class<?> testClass, String name) {
 		TestSuite suite = new TestSuite(testClass);
 		TestResult result = new TestResult();
 		result.addListener(this);
+		List<Test> tests = selectTests(suite, name);
 		if (timeoutMillis > 0) {
 			timeout = new TimeoutExecutor(() -> timeoutTest(), timeoutMillis);
 		}
-		suite.run(result);
+		for (Test t : tests) {
+			if (result.shouldStop()) break;
+			if (repeat > 0) runRepeated(suite, t, result);
+			else suite.runTest(t, result);
+		}
 		if (timeout != null) {
-			if (!timeout.cancel()) return;
+			if (!timeout.cancel()) return false;
 		}
-		printResults();
+		return true;
 	}
-	
+
+	/**
+	 * Run a test several times, after some warm-up runs that are not counted,
+	 * each time with a new instance of the test case.
+	 * The test passes only if every counted run passes.
+	 */
+	private void runRepeated(TestSuite suite, Test t, TestResult result) {
+		boolean wasOk = ok;
+		String key = t.toString();
+		measuring = false;
+		for (int i=0; i < warmup + repeat; ++i) {
+			if (result.shouldStop()) return;
+			if (i == warmup) measuring = true;
+			Test run = t;
+			if (i > 0 && t instanceof TestCase) {
+				run = TestSuite.createTest(t.getClass(), ((TestCase)t).getName());
+			}
+			suite.runTest(run, result);
+		}
+		Disposition overall = Disposition.PASSED;
+		for (Disposition d : repeatedDispositions.get(key)) {
+			if (d != Disposition.PASSED) overall = d;
+		}
+		results.put(key, overall);
+		ok = wasOk && overall == Disposition.PASSED;
+	}
+
 	private void doRun(Class<?> testClass, String name) {
-		TestSuite suite = new TestSuite(testClass);
-		TestResult result = new TestResult();
-		result.addListener(this);
-		Enumeration<Test> tests = suite.tests();
-		if (timeoutMillis > 0) {
-			timeout = new TimeoutExecutor(() -> timeoutTest(), timeoutMillis);
+		if (!runTests(testClass, name)) return;
+		printResults();
+		if (saveDurationsFile != null) {
+			try {
+				writeDurations(saveDurationsFile);
+			} catch (IOException e) {
+				System.err.println("Could not save durations: " + e);
+			}
 		}
-		while (tests.hasMoreElements()) {
-			Test t = tests.nextElement();
-			if (t instanceof TestCase) {
-				TestCase c = (TestCase)t;
-				if (name.equals(c.getName())) {
-					suite.runTest(t, result);
+	}
+
+	/**
+	 * Combine the outputs of several shard runs into a single report.
+	 * If the test class is known, the tests are listed in the order
+	 * of a single run, otherwise in the order of the files.
+	 * @param testClass test class (may be null)
+	 * @param files output files of the shard runs
+	 */
+	@SuppressWarnings("unchecked")
+	private void doMerge(Class<?> testClass, List<String> files) throws IOException {
+		Map<String,Disposition> merged = new LinkedHashMap<>();
+		for (String filename : files) {
+			boolean inResults = false;
+			try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+				String in;
+				while ((in = br.readLine()) != null) {
+					if (in.equals("==========")) {
+						inResults = true;
+						continue;
+					}
+					if (!inResults) continue;
+					int colon = in.lastIndexOf(": ");
+					if (colon <= 0) continue;
+					try {
+						merged.put(in.substring(0, colon), Disposition.valueOf(in.substring(colon+2)));
+					} catch (IllegalArgumentException e) {
+						// not a result line
+					}
 				}
 			}
 		}
-		if (timeout != null) {
-			if (!timeout.cancel()) return;
+		if (testClass != null) {
+			Enumeration<Test> tests = new TestSuite(testClass).tests();
+			while (tests.hasMoreElements()) {
+				String testName = getTestName(tests.nextElement());
+				Disposition d = merged.remove(testName);
+				if (d != null) results.put(testName, d);
+			}
+		}
+		results.putAll(merged);
+		for (Disposition d : results.values()) {
+			if (d != Disposition.PASSED) ok = false;
 		}
 		printResults();
 	}
 	
+	/**
+	 * A class loader that loads classes from the watched binary directory
+	 * in preference to its parent, so that a fresh loader sees recompiled classes.
+	 * Framework classes are always shared with the parent so that the
+	 * tests can report to this runner.
+	 * The names of classes loaded from the directory are recorded.
+	 */
+	private static class WatchClassLoader extends URLClassLoader {
+		private final Set<String> loaded = Collections.synchronizedSet(new HashSet<>());
+
+		WatchClassLoader(File binDir) throws MalformedURLException {
+			super(new URL[]{binDir.toURI().toURL()}, TestRunner.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("java.") || name.startsWith("junit.") || name.startsWith("edu.uwm.cs.junit.")) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					try {
+						c = findClass(name);
+						loaded.add(name);
+					} catch (ClassNotFoundException e) {
+						return super.loadClass(name, resolve);
+					}
+				}
+				if (resolve) resolveClass(c);
+				return c;
+			}
+		}
+
+		Set<String> getLoaded() {
+			return new HashSet<>(loaded);
+		}
+	}
+
+	private TestRunner newRound() {
+		TestRunner round = new TestRunner();
+		round.verbose = verbose;
+		round.timeoutMillis = timeoutMillis;
+		round.shardIndex = shardIndex;
+		round.shardCount = shardCount;
+		round.durationsFile = durationsFile;
+		round.repeat = repeat;
+		round.warmup = warmup;
+		round.unstableRatio = unstableRatio;
+		round.roundDone = new CountDownLatch(1);
+		return round;
+	}
+
+	private static void register(WatchService ws, Map<WatchKey,Path> keys, Path root) throws IOException {
+		if (!Files.isDirectory(root)) return;
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				keys.put(dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Return the class name for a changed class file, or null if not a class file.
+	 */
+	private static String changedClassName(Path root, Path file) {
+		String filename = file.getFileName().toString();
+		if (!filename.endsWith(".class")) return null;
+		String relative = root.relativize(file).toString();
+		relative = relative.substring(0, relative.length() - ".class".length());
+		return relative.replace(File.separatorChar, '.');
+	}
+
+	/**
+	 * Wait for changes and return the names of the changed classes.
+	 * Changes arriving in a quick burst (e.g. a recompilation) are collected together.
+	 */
+	private static Set<String> awaitChanges(WatchService ws, Map<WatchKey,Path> keys, Path root) throws IOException, InterruptedException {
+		Set<String> changed = new HashSet<>();
+		WatchKey key = ws.take();
+		while (key != null) {
+			Path dir = keys.get(key);
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					changed.add("*");
+					continue;
+				}
+				Path file = dir.resolve((Path)event.context());
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+					register(ws, keys, file);
+				}
+				String name = changedClassName(root, file);
+				if (name != null) changed.add(name);
+			}
+			if (!key.reset()) keys.remove(key);
+			key = ws.poll(WATCH_QUIET_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		return changed;
+	}
+
+	private static final long WATCH_QUIET_MILLIS = 50;
+
+	private static boolean affects(Set<String> changed, Set<String> dependencies) {
+		if (dependencies.isEmpty() || changed.contains("*")) return !changed.isEmpty();
+		for (String name : changed) {
+			if (dependencies.contains(name)) return true;
+			for (String dep : dependencies) {
+				if (dep.startsWith(name + "$")) return true;
+			}
+		}
+		return false;
+	}
+
+	private void printDelta(Map<String,Disposition> previous, long millis) {
+		System.out.println("\n========== (" + millis + " ms)");
+		boolean changes = false;
+		for (Map.Entry<String,Disposition> e : results.entrySet()) {
+			Disposition before = previous.get(e.getKey());
+			if (before == e.getValue()) continue;
+			changes = true;
+			System.out.println(stripClass(e.getKey()) + ": " + (before == null ? "new" : before) + " -> " + e.getValue());
+			printHotFrames(e.getKey());
+		}
+		for (String testName : previous.keySet()) {
+			if (results.containsKey(testName)) continue;
+			changes = true;
+			System.out.println(stripClass(testName) + ": removed");
+		}
+		if (!changes) System.out.println("No changes in test results.");
+		if (ok) {
+			System.out.println("OK (" + results.size() + " tests)\n");
+		} else {
+			System.out.println("FAILURES!!!\n");
+		}
+	}
+
+	/**
+	 * Rerun the tests whenever a class file the tests depend on
+	 * changes in the binary directory.  (Saving a source file triggers a run
+	 * once the IDE or build recompiles it.)  Each run loads the
+	 * classes with a fresh class loader.  After the first run,
+	 * only the changes in test results are printed.
+	 * A test that times out is left running in its thread;
+	 * its class loader is only closed once the thread finishes.
+	 * This method never returns normally.
+	 * @param className name of the test class
+	 * @param name name of the single test to run, or null for all
+	 */
+	private void doWatch(String className, String name) throws IOException, InterruptedException {
+		File binDir = new File("bin");
+		Path root = binDir.toPath().toAbsolutePath();
+		WatchService ws = FileSystems.getDefault().newWatchService();
+		Map<WatchKey,Path> keys = new HashMap<>();
+		register(ws, keys, root);
+		System.out.println("Watching " + binDir + " for changes.");
+		Map<String,Disposition> previous = null;
+		Set<String> dependencies = Collections.emptySet();
+		Map<Thread,WatchClassLoader> abandoned = new HashMap<>();
+		for (;;) {
+			long start = System.nanoTime();
+			TestRunner round = newRound();
+			WatchClassLoader loader = new WatchClassLoader(binDir);
+			Thread runner = null;
+			try {
+				Class<?> testClass = Class.forName(className, true, loader);
+				runner = new Thread(() -> {
+					try {
+						round.runTests(testClass, name);
+					} finally {
+						round.roundDone.countDown();
+					}
+				}, "TestRunner watch");
+				runner.setDaemon(true);
+				runner.setContextClassLoader(loader);
+				runner.start();
+				round.roundDone.await();
+				runner.join(WATCH_QUIET_MILLIS);
+			} catch (ClassNotFoundException|LinkageError e) {
+				System.out.println("Could not load " + className + ": " + e);
+				round.ok = false;
+			}
+			dependencies = loader.getLoaded();
+			if (runner != null && runner.isAlive()) {
+				// the stuck test may still load classes: don't close the loader under it
+				abandoned.put(runner, loader);
+			} else {
+				loader.close();
+			}
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			if (previous == null) round.printResults();
+			else round.printDelta(previous, millis);
+			previous = round.results;
+			Iterator<Map.Entry<Thread,WatchClassLoader>> it = abandoned.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Thread,WatchClassLoader> e = it.next();
+				if (e.getKey().isAlive()) continue;
+				e.getValue().close();
+				it.remove();
+			}
+			if (!abandoned.isEmpty()) {
+				System.out.println("Warning: " + abandoned.size() + " timed out test thread" +
+						(abandoned.size() == 1 ? " is" : "s are") + " still running" +
+						(runner != null && runner.isAlive() ? ", including " + stripClass(round.currentTest.toString()) : "") + ".");
+			}
+			Set<String> changed;
+			do {
+				changed = awaitChanges(ws, keys, root);
+			} while (!affects(changed, dependencies));
+		}
+	}
+
 	private void start(String[] args) throws NoSuchMethodException, SecurityException {
 		Class<?> testClass = null;
 		String testName = null;
+		boolean merge = false;
+		List<String> mergeFiles = new ArrayList<>();
 		for (int i=0; i < args.length; ++i) {
 			if (args[i].startsWith("-")) {
 				switch(args[i]) {
@@ -133,6 +663,64 @@ public class TestRunner implements TestListener {
 					}
 					timeoutMillis = Integer.parseInt(args[i]);
 					break;
+				case "--shard":
+					if (++i >= args.length) {
+						System.err.println("--shard needs argument i/n");
+						System.exit(1);
+					}
+					int slash = args[i].indexOf('/');
+					try {
+						shardIndex = Integer.parseInt(args[i].substring(0, slash));
+						shardCount = Integer.parseInt(args[i].substring(slash+1));
+					} catch (NumberFormatException|StringIndexOutOfBoundsException e) {
+						shardCount = 0;
+					}
+					if (shardCount < 1 || shardIndex < 1 || shardIndex > shardCount) {
+						System.err.println("--shard needs argument i/n with 1 <= i <= n");
+						System.exit(1);
+					}
+					break;
+				case "--durations":
+					if (++i >= args.length) {
+						System.err.println("--durations needs argument");
+						System.exit(1);
+					}
+					durationsFile = args[i];
+					break;
+				case "--save-durations":
+					if (++i >= args.length) {
+						System.err.println("--save-durations needs argument");
+						System.exit(1);
+					}
+					saveDurationsFile = args[i];
+					break;
+				case "--merge":
+					merge = true;
+					break;
+				case "--watch":
+					watch = true;
+					break;
+				case "--repeat":
+					if (++i >= args.length) {
+						System.err.println("--repeat needs argument");
+						System.exit(1);
+					}
+					repeat = Integer.parseInt(args[i]);
+					break;
+				case "--warmup":
+					if (++i >= args.length) {
+						System.err.println("--warmup needs argument");
+						System.exit(1);
+					}
+					warmup = Integer.parseInt(args[i]);
+					break;
+				case "--unstable-ratio":
+					if (++i >= args.length) {
+						System.err.println("--unstable-ratio needs argument");
+						System.exit(1);
+					}
+					unstableRatio = Double.parseDouble(args[i]);
+					break;
 				case "--version":
 					System.out.println("edu.uwm.cs.junit.TestRunner version " + VERSION);
 					System.exit(0);
@@ -144,9 +732,11 @@ public class TestRunner implements TestListener {
 					System.err.println("Unknown option: " + args[i]);
 					System.exit(1);
 				}
+			} else if (merge && new File(args[i]).isFile()) {
+				mergeFiles.add(args[i]);
 			} else {
 				if (testClass != null) {
-					if (testName != null) {
+					if (testName != null || merge) {
 						System.err.println("Too many arguments: " + args[i]);
 						System.exit(1);
 					} else {
@@ -163,16 +753,33 @@ public class TestRunner implements TestListener {
 				}
 			}
 		}
+		if (merge) {
+			if (mergeFiles.isEmpty()) {
+				System.err.println("Expected shard output files to merge.");
+				System.exit(1);
+			}
+			try {
+				doMerge(testClass, mergeFiles);
+			} catch (IOException e) {
+				System.err.println("Could not merge: " + e);
+				System.exit(1);
+			}
+			return;
+		}
 		if (testClass == null) {
 			System.err.println("Expected a class name to run tests from.");
 			System.exit(1);
 		}
 		System.out.println("TestRunner version " + VERSION + " with timeout = " + timeoutMillis + " ms.");
-		if (testName == null) {
-			doRun(testClass);
-		} else {
-			doRun(testClass, testName);
+		if (watch) {
+			try {
+				doWatch(testClass.getName(), testName);
+			} catch (IOException|InterruptedException e) {
+				System.err.println("Watch ended: " + e);
+				System.exit(1);
+			}
 		}
+		doRun(testClass, testName);
 	}
 	
 	public static void main(String[] args) throws NoSuchMethodException, SecurityException {
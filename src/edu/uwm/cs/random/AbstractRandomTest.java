@@ -1,7 +1,9 @@
 package edu.uwm.cs.random;
 
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -14,6 +16,7 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 
 import edu.uwm.cs.util.Consumer4;
+import edu.uwm.cs.util.Footprint;
 import edu.uwm.cs.util.Function4;
 import edu.uwm.cs.util.TimeoutExecutor;
 import edu.uwm.cs.util.TriConsumer;
@@ -73,9 +76,6 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	protected final Class<R> refClass;
 	protected final Class<S> sutClass;
 	
-	private Map<Object,String> registry = new IdentityHashMap<>();
-	private Map<String,Object> testObjects = new HashMap<>();
-	private Map<Object,Integer> registeredIndex = new IdentityHashMap<>();
 
 	public class RegisteredClass<T,U> implements TestClass<T,U> {
 		Class<T> refClass;
@@ -83,7 +83,10 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 		String prefix;
 		String typeName;
 		List<T> refs; // reference objects
-		List<U> tests;
+		List<U> tests; // SUT objects of the selected version
+		List<List<U>> versionTests = new ArrayList<>(); // SUT objects for each version
+		int selected;
+		IdentityIndex index = new IdentityIndex(); // index of each reference object
 		
 		RegisteredClass(Class <T> rc, Class<U> sc, String p, String t) {
 			refClass = rc;
@@ -92,6 +95,15 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 			typeName = t;
 			refs = new ArrayList<>();
 			tests = new ArrayList<>();
+			versionTests.add(tests);
+		}
+
+		void select(int version) {
+			while (versionTests.size() <= version) {
+				versionTests.add(new ArrayList<>());
+			}
+			selected = version;
+			tests = versionTests.get(version);
 		}
 		
 		@Override
@@ -99,19 +111,22 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 			return refClass;
 		}
 
+		@SuppressWarnings("unchecked")
 		@Override
 		public Class<U> getSUTClass() {
+			if (versions != null && this == mainClass) return (Class<U>)versions.get(selected);
 			return sutClass;
 		}
 
 		@Override
 		public String getTypeName() {
+			if (versions != null && this == mainClass) return versions.get(selected).getCanonicalName();
 			return typeName;
 		}
 
 		@Override
 		public int indexOf(T ref) {
-			return registeredIndex.getOrDefault(ref, -1);
+			return index.get(ref);
 		}
 
 		@Override
@@ -133,10 +148,18 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 			return tests.get(i);
 		}
 
+		@Override
+		public boolean hasSUTObject(int i) {
+			return i < tests.size();
+		}
+
 		@Override
 		public void clear() {
 			refs.clear();
-			tests.clear();
+			for (List<U> l : versionTests) {
+				l.clear();
+			}
+			index.clear();
 		}
 		
 		@Override
@@ -146,13 +169,16 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 		
 		@Override
 		public void register(T ref, U test) {
+			int old = index.get(ref);
+			if (old >= 0 && old == tests.size() && old < refs.size() && refs.get(old) == ref) {
+				// registered when checking another version
+				tests.add(test);
+				return;
+			}
 			int i=size();
-			// String name = prefix + i;
 			refs.add(ref);
 			tests.add(test);
-			//registry.put(ref, name);
-			//testObjects.put(name, test);
-			registeredIndex.put(ref, i);
+			index.put(ref, i);
 		}
 		
 		public void register(Union<T,U> u1, Union<T,U> u2) {
@@ -181,17 +207,10 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 			return "new String(" + lit + ")";
 		}
 		if (x == null || x instanceof String || x instanceof Character || x instanceof Number) return edu.uwm.cs.junit.Util.toString(x);
-		String name = registry.get(x);
-		if (name != null) return name;
-		Integer index = registeredIndex.get(x);
-		if (index != null) {
-			for (RegisteredClass<?,?> rc : registeredClasses) {
-				if (rc.getRefClass().isInstance(x)) {
-					name = rc.prefix + index;
-					registry.put(x, name);
-					return name;
-				}
-			}
+		for (RegisteredClass<?,?> rc : registeredClasses) {
+			if (!rc.getRefClass().isInstance(x)) continue;
+			int index = rc.index.get(x);
+			if (index >= 0) return rc.prefix + index;
 		}
 		return x.toString();
 	}
@@ -217,6 +236,22 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	protected final int maxTestSize;
 	protected final int timeout = DEFAULT_TIMEOUT;
 	private Random random = new Random();
+
+	/**
+	 * System property giving the master seed to use (otherwise it is chosen from the clock).
+	 */
+	public static final String SEED_PROPERTY = "edu.uwm.cs.random.seed";
+	/**
+	 * System property requesting a replay of a single sequence instead of a run.
+	 * The value has the form seed:sequence:size as printed with a failing test.
+	 * @see #replay(long, long, int)
+	 */
+	public static final String REPLAY_PROPERTY = "edu.uwm.cs.random.replay";
+
+	private long masterSeed = Long.getLong(SEED_PROPERTY, System.nanoTime());
+	private long sequence; // index of next sequence to start
+	private long currentSequence = -1; // index of the current sequence
+	private int currentSize;
 	
 	/**
 	 * Create a random testing situation, where assertions are required to be enabled for the SUT.
@@ -257,6 +292,22 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 		}
 	}
 
+	/**
+	 * Return an estimate of the memory used by the SUT objects
+	 * of a registered class in the current sequence, including everything reachable from them.
+	 * This can be used to check that the SUT does not bloat.
+	 * @param desc registered class
+	 * @param excluded classes of objects not to count (such as element types)
+	 * @return total size in bytes
+	 * @throws Footprint.IncompleteException if the SUT objects cannot be traversed,
+	 * e.g. they use java.util collections and java.util is not opened
+	 * (--add-opens java.base/java.util=ALL-UNNAMED)
+	 * @see Footprint#retainedSize(Object[], Class...)
+	 */
+	protected long sutFootprint(RegisteredClass<?,?> desc, Class<?>... excluded) {
+		return Footprint.retainedSize(desc.tests.toArray(), excluded);
+	}
+
 	@SuppressWarnings("unchecked")
 	protected <T> Class<java.util.Iterator<T>> iteratorClass() {
 		return (Class<java.util.Iterator<T>>)(Class<?>)Iterator.class;
@@ -265,7 +316,7 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	protected <A,T> Function<A,Result<T>> lift(Function<A,T> func) {
 		return (a) -> {
 			try {
-				return new NormalResult<T>(func.apply(a));
+				return NormalResult.of(func.apply(a));
 			} catch (Exception|Error e) {
 				return new ExceptionResult<T>(e);
 			}
@@ -274,7 +325,7 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	protected <A,B,T> BiFunction<A,B,Result<T>> lift(BiFunction<A,B,T> func) {
 		return (a,b) -> {
 			try {
-				return new NormalResult<T>(func.apply(a,b));
+				return NormalResult.of(func.apply(a,b));
 			} catch (Exception|Error e) {
 				return new ExceptionResult<T>(e);
 			}
@@ -283,7 +334,7 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	protected <A,B,C,T> TriFunction<A,B,C,Result<T>> lift(TriFunction<A,B,C,T> func) {
 		return (a,b,c) -> {
 			try {
-				return new NormalResult<T>(func.apply(a,b,c));
+				return NormalResult.of(func.apply(a,b,c));
 			} catch (Exception|Error e) {
 				return new ExceptionResult<T>(e);
 			}
@@ -292,7 +343,7 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	protected <A,B,C,D,T> Function4<A,B,C,D,Result<T>> lift(Function4<A,B,C,D,T> func) {
 		return (a,b,c,d) -> {
 			try {
-				return new NormalResult<T>(func.apply(a,b,c,d));
+				return NormalResult.of(func.apply(a,b,c,d));
 			} catch (Exception|Error e) {
 				return new ExceptionResult<T>(e);
 			}
@@ -395,12 +446,53 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 		};
 	}
 
+	private int generation; // incremented whenever a sequence is cleared
+	private final Map<TestClass<?,?>,Command<?>> newCommands = new IdentityHashMap<>();
+
+	/**
+	 * Commands created by one builder, which are reused in later sequences.
+	 * A command returned by a builder is only valid until the current sequence is cleared;
+	 * after that it may be reused (with different indices and arguments) by the same builder.
+	 * @param C type of commands
+	 */
+	private class CommandPool<C> {
+		private final List<C> slots = new ArrayList<>();
+		private int used;
+		private int poolGeneration = -1;
+
+		/**
+		 * Return a command not used in the current sequence, if any.
+		 * @return command to reuse, or null if all are in use.
+		 */
+		C reuse() {
+			if (poolGeneration != generation) {
+				poolGeneration = generation;
+				used = 0;
+			}
+			if (used < slots.size()) return slots.get(used++);
+			return null;
+		}
+
+		/**
+		 * Add a new command to the pool, in use in the current sequence.
+		 * @param c new command
+		 * @return the command
+		 */
+		C add(C c) {
+			slots.add(c);
+			++used;
+			return c;
+		}
+	}
+
 	protected Command<Union<R,S>> newCommand() {
 		return newCommand(mainClass);
 	}
 	
+	@SuppressWarnings("unchecked")
 	protected <U,V> Command<Union<U,V>> newCommand(TestClass<U,V> desc) {
-		return new Command.NewCommand<>(desc);
+		// the command has no state, so one can be shared
+		return (Command<Union<U,V>>)newCommands.computeIfAbsent(desc, (d) -> new Command.NewCommand<>(desc));
 	}
 	
 	/**
@@ -433,7 +525,7 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @return function to create a command to create an instance that will be registered
 	 */
 	protected <T,A> Function<A,Command<?>> create(TestClass<T,T> desc, Function<A,T> func) {
-		return (a) -> new Command.NewCommand1<>(desc, a, func, func);
+		return create(desc, func, func);
 	}
 		
 	/**
@@ -445,7 +537,12 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @return function to create a command to create an instance that will be registered
 	 */
 	protected <T,U,A> Function<A,Command<?>> create(TestClass<T,U> desc, Function<A,T> func1, Function<A,U> func2) {
-		return (a) -> new Command.NewCommand1<>(desc, a, func1, func2);
+		CommandPool<Command.NewCommand1<T,U,A>> pool = new CommandPool<>();
+		return (a) -> {
+			Command.NewCommand1<T,U,A> c = pool.reuse();
+			if (c == null) return pool.add(new Command.NewCommand1<>(desc, a, func1, func2));
+			return c.set(a);
+		};
 	}
 		
 	/**
@@ -456,7 +553,7 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @return command to create an instance that will be registered
 	 */
 	protected <T,A,B> BiFunction<A,B,Command<?>> create(TestClass<T,T> desc, BiFunction<A,B,T> func) {
-		return (a,b) -> new Command.NewCommand2<>(desc, a, b, func, func);
+		return create(desc, func, func);
 	}
 	
 	/**
@@ -468,7 +565,12 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @return function to create a command to create an instance that will be registered
 	 */
 	protected <T,U,A,B> BiFunction<A,B,Command<?>> create(TestClass<T,U> desc, BiFunction<A,B,T> func1, BiFunction<A,B,U> func2) {
-		return (a,b) -> new Command.NewCommand2<>(desc, a, b, func1, func2);
+		CommandPool<Command.NewCommand2<T,U,A,B>> pool = new CommandPool<>();
+		return (a,b) -> {
+			Command.NewCommand2<T,U,A,B> c = pool.reuse();
+			if (c == null) return pool.add(new Command.NewCommand2<>(desc, a, b, func1, func2));
+			return c.set(a, b);
+		};
 	}
 		
 	/**
@@ -520,7 +622,12 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @see {@link #lift(TestClass, Function) for object results
 	 */
 	protected <T,U,V> Function<Integer,Command<?>> build(TestClass<U,V> desc, Function<U,Result<T>> rfunc, Function <V,Result<T>> sfunc, String mname) {
-		return (i) -> new Command.Command0<>(desc,i,rfunc,sfunc,mname);
+		CommandPool<Command.Command0<U,V,T>> pool = new CommandPool<>();
+		return (i) -> {
+			Command.Command0<U,V,T> c = pool.reuse();
+			if (c == null) return pool.add(new Command.Command0<>(desc,i,rfunc,sfunc,mname));
+			return c.set(i);
+		};
 	}
 
 	/**
@@ -562,7 +669,7 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 				return new ExceptionResult<>(ex);
 			}
 		};
-		return (i) -> new Command.Command0<U,V,Union<W,X>>(inDesc,i,lift1,lift2,mname);
+		return build(inDesc, lift1, lift2, mname);
 	}
 
 	
@@ -594,7 +701,12 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @see {@link #lift(TestClass, Function) for object results
 	 */
 	protected <A,T,U,V> BiFunction<Integer,A,Command<?>> build(TestClass<U,V> desc, BiFunction<U,A,Result<T>> rfunc, BiFunction<V,A,Result<T>> sfunc, String mname) {
-		return (i,a) -> new Command.Command1<>(desc, i, a, rfunc, sfunc, mname);
+		CommandPool<Command.Command1<U,V,T,A>> pool = new CommandPool<>();
+		return (i,a) -> {
+			Command.Command1<U,V,T,A> c = pool.reuse();
+			if (c == null) return pool.add(new Command.Command1<>(desc, i, a, rfunc, sfunc, mname));
+			return c.set(i, a);
+		};
 	}
 
 	/**
@@ -639,7 +751,12 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @see {@link #lift(TestClass, Function) for object results
 	 */
 	protected <A,B,T,U,V> TriFunction<Integer,A,B,Command<?>> build(TestClass<U,V> desc, TriFunction<U,A,B,Result<T>> rfunc, TriFunction<V,A,B,Result<T>> sfunc, String mname) {
-		return (i,a,b) -> new Command.Command2<>(desc, i, a, b, rfunc, sfunc, mname);
+		CommandPool<Command.Command2<U,V,T,A,B>> pool = new CommandPool<>();
+		return (i,a,b) -> {
+			Command.Command2<U,V,T,A,B> c = pool.reuse();
+			if (c == null) return pool.add(new Command.Command2<>(desc, i, a, b, rfunc, sfunc, mname));
+			return c.set(i, a, b);
+		};
 	}
 
 	/**
@@ -685,7 +802,12 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @see {@link #lift(TestClass, Function) for object results
 	 */
 	protected <A,B,C,T,U,V> Function4<Integer,A,B,C,Command<?>> build(TestClass<U,V> desc, Function4<U,A,B,C,Result<T>> rfunc, Function4<V,A,B,C,Result<T>> sfunc, String mname) {
-		return (i,a,b,c) -> new Command.Command3<>(desc, i, a, b, c, rfunc, sfunc, mname);
+		CommandPool<Command.Command3<U,V,T,A,B,C>> pool = new CommandPool<>();
+		return (i,a,b,c) -> {
+			Command.Command3<U,V,T,A,B,C> cmd = pool.reuse();
+			if (cmd == null) return pool.add(new Command.Command3<>(desc, i, a, b, c, rfunc, sfunc, mname));
+			return cmd.set(i, a, b, c);
+		};
 	}
 
 	/**
@@ -732,7 +854,12 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @see {@link #lift(TestClass, Function) for object results
 	 */
 	protected <A,B,T,U,V> BiFunction<Integer,Integer,Command<?>> build(TestClass<U,V> desc, TestClass<A,B> argDesc, BiFunction<U,A,Result<T>> rfunc, BiFunction<V,B,Result<T>> sfunc, String mname) {
-		return (i,j) -> new Command.CommandM<>(desc, argDesc, i, j, rfunc, sfunc, mname);
+		CommandPool<Command.CommandM<U,V,T,A,B>> pool = new CommandPool<>();
+		return (i,j) -> {
+			Command.CommandM<U,V,T,A,B> c = pool.reuse();
+			if (c == null) return pool.add(new Command.CommandM<>(desc, argDesc, i, j, rfunc, sfunc, mname));
+			return c.set(i, j);
+		};
 	}
 
 	/**
@@ -763,16 +890,305 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	 * @see {@link #lift(TestClass, Function) for object results
 	 */
 	protected <A,B,C,T,U,V> TriFunction<Integer,Integer,C,Command<?>> build(TestClass<U,V> desc, TestClass<A,B> argDesc, TriFunction<U,A,C,Result<T>> rfunc, TriFunction<V,B,C,Result<T>> sfunc, String mname) {
-		return (i,j,c) -> new Command.CommandMP<>(desc, argDesc, i, j, c, rfunc, sfunc, mname);
+		CommandPool<Command.CommandMP<U,V,T,A,B,C>> pool = new CommandPool<>();
+		return (i,j,c) -> {
+			Command.CommandMP<U,V,T,A,B,C> cmd = pool.reuse();
+			if (cmd == null) return pool.add(new Command.CommandMP<>(desc, argDesc, i, j, c, rfunc, sfunc, mname));
+			return cmd.set(i, j, c);
+		};
+	}
+
+	/**
+	 * System property giving the number of seconds between reports of
+	 * command statistics during a run (zero to report only at the end).
+	 */
+	public static final String STATS_PROPERTY = "edu.uwm.cs.random.stats";
+	public static final int DEFAULT_STATS_INTERVAL = 10;
+
+	/**
+	 * Return the statistics of commands executed so far
+	 * (not counting those executed while shrinking a failure).
+	 * @return statistics, updated as commands are executed
+	 */
+	public CommandStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Print the command statistics as comments.
+	 */
+	protected void printStats() {
+		for (String line : stats.report()) {
+			System.out.println("// " + line);
+		}
+	}
+
+	/**
+	 * System property giving the number of commands in each sequence
+	 * used to check for performance bugs after functional testing passes.
+	 * If not set, performance is not checked.
+	 * @see #checkPerformance(int)
+	 */
+	public static final String PERF_PROPERTY = "edu.uwm.cs.random.perf";
+	/**
+	 * Number of sequences executed when checking performance.
+	 * The first is not measured: it gives the JIT a chance to compile the code.
+	 */
+	public static final int PERF_ROUNDS = 4;
+
+	private PerformanceProfile profile; // non-null while checking performance
+	private String perfNote; // description of performance bug found
+
+	/**
+	 * Return the size of the structure a command is applied to,
+	 * used to check whether the cost of the SUT grows faster than that of the reference.
+	 * This implementation handles collections, maps, strings and arrays.
+	 * Override this method to handle other reference classes.
+	 * @param ref reference object the command is applied to, may be null
+	 * @return size, or -1 if unknown (in which case the command is not profiled)
+	 */
+	protected int structureSize(Object ref) {
+		if (ref instanceof java.util.Collection<?>) return ((java.util.Collection<?>)ref).size();
+		if (ref instanceof Map<?,?>) return ((Map<?,?>)ref).size();
+		if (ref instanceof CharSequence) return ((CharSequence)ref).length();
+		if (ref != null && ref.getClass().isArray()) return java.lang.reflect.Array.getLength(ref);
+		return -1;
+	}
+
+	/**
+	 * Check for performance bugs: commands whose cost in the SUT grows
+	 * faster with the size of the structure than their cost in the reference implementation.
+	 * Long sequences are executed, timing every command on both sides.
+	 * If a performance bug (or a functional failure) is found, the current sequence is left
+	 * as the test to print: for a performance bug, it is cut off
+	 * after the last execution of the slow command.
+	 * @param length number of commands in each sequence
+	 * @return true if no bugs were found
+	 * @see PerformanceProfile
+	 */
+	public boolean checkPerformance(int length) {
+		System.out.println("// Checking performance with sequences of " + length + " commands.");
+		profile = new PerformanceProfile();
+		try {
+			for (int round = 0; round < PERF_ROUNDS; ++round) {
+				if (round == 1) profile.reset();
+				if (!generateSequence(masterSeed, sequence, length)) return false;
+			}
+			List<PerformanceProfile.Divergence> divergences = profile.findDivergences();
+			if (divergences.isEmpty()) {
+				clear();
+				return true;
+			}
+			PerformanceProfile.Divergence worst = divergences.get(0);
+			Trace t = getTrace();
+			int last = t.size()-1;
+			while (last > 0 && !t.getCommand(last).getKind().equals(worst.getKind())) --last;
+			t.truncate(last+1);
+			StringBuilder sb = new StringBuilder("Performance bug: " + worst);
+			for (int i=1; i < divergences.size(); ++i) {
+				sb.append("\n// Also: " + divergences.get(i));
+			}
+			perfNote = sb.toString();
+			return false;
+		} finally {
+			profile = null;
+		}
+	}
+
+	private List<Class<? extends S>> versions; // versions of the SUT tested at once, or null
+	private VersionResults versionResults = new VersionResults(); // shared by the workers of a campaign
+	private boolean[] live; // versions still being tested
+
+	/**
+	 * Test several versions of the SUT at once, for example several implementations
+	 * of the same interface.  Each command is executed once by the reference implementation,
+	 * and then by each version, comparing each result with the expected one.
+	 * A version that fails (or hangs) is dropped, and testing continues with the others.
+	 * At the end, for each version that failed, the failing sequence is executed again
+	 * with that version alone, and printed as a test; a failure that does not happen with
+	 * the version alone is not counted.  Then the versions that passed are listed.
+	 * <p>
+	 * SUT objects of the main class must be created by {@link #newCommand()}, which uses
+	 * the no-argument constructor of each version's class.  When the expected result
+	 * is a choice, the first version fixes the choice.  A later version that makes
+	 * a different (legal) choice is dropped, since the reference implementation cannot
+	 * follow it, but it is not counted as failing unless the sequence fails with it alone.
+	 * @param classes versions of the SUT class, must not be empty
+	 */
+	protected void setSUTVersions(List<Class<? extends S>> classes) {
+		if (classes.isEmpty()) throw new IllegalArgumentException("need at least one version");
+		versions = new ArrayList<>(classes);
+		live = new boolean[versions.size()];
+		refreshVersions();
+	}
+
+	/**
+	 * Test several versions of the SUT at once.
+	 * @param classes versions of the SUT class, must not be empty
+	 * @see #setSUTVersions(List)
+	 */
+	@SafeVarargs
+	protected final void setSUTVersions(Class<? extends S>... classes) {
+		List<Class<? extends S>> list = new ArrayList<>();
+		for (Class<? extends S> c : classes) {
+			list.add(c);
+		}
+		setSUTVersions(list);
+	}
+
+	boolean hasVersions() {
+		return versions != null;
+	}
+
+	private void selectVersion(int v) {
+		for (RegisteredClass<?,?> rc : registeredClasses) {
+			rc.select(v);
+		}
+	}
+
+	/**
+	 * Drop versions that have failed (perhaps in other workers)
+	 * and select the first remaining version.
+	 * This must only be done between sequences.
+	 * @return whether any version remains
+	 */
+	private boolean refreshVersions() {
+		int first = -1;
+		for (int v = live.length-1; v >= 0; --v) {
+			live[v] = !versionResults.isDropped(v);
+			if (live[v]) first = v;
+		}
+		if (first < 0) return false;
+		selectVersion(first);
+		return true;
+	}
+
+	private void dropVersion(int v, String kind, boolean hang, boolean choice) {
+		live[v] = false;
+		versionResults.drop(new VersionResults.Failure(v, masterSeed, currentSequence, currentSize, kind, hang, choice));
+		if (versionResults.size() == versions.size() && campaign != null) campaign.stop();
+	}
+
+	/**
+	 * Check a command on the versions after the first,
+	 * dropping the versions that fail.
+	 * @param command command being tested
+	 * @param expected expected result (from the reference implementation)
+	 * @param passed whether the first (selected) version passed
+	 * @return whether any version remains
+	 */
+	private <T> boolean checkVersions(Command<T> command, Result<T> expected, boolean passed) {
+		int first = mainClass.selected;
+		if (!passed) dropVersion(first, command.getKind(), false, false);
+		TimeoutExecutor timer = getTimer();
+		for (int v=first+1; v < live.length; ++v) {
+			if (!live[v]) continue;
+			selectVersion(v);
+			currentState = TestState.SUT;
+			Result<T> actual = command.execute(false);
+			if (!timer.defer(timeout)) return false;
+			currentState = TestState.FRAMEWORK;
+			if (!expected.includesAlso(actual)) dropVersion(v, command.getKind(), false, expected.allows(actual));
+		}
+		for (int v=0; v < live.length; ++v) {
+			if (live[v]) {
+				selectVersion(v);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Print which versions of the SUT passed, and a test for each one that failed.
+	 * A version that was dropped counts as failing only if it hung, or
+	 * if the sequence in which it was dropped fails with that version alone.
+	 * @param results failures of the versions
+	 * @return whether all versions passed
+	 */
+	boolean printVersionReport(VersionResults results) {
+		int n = versions.size();
+		int failed = 0;
+		for (int v=0; v < n; ++v) {
+			VersionResults.Failure f = results.get(v);
+			if (f != null && (f.hang || reproduce(f))) ++failed;
+		}
+		System.out.println("// " + (n - failed) + " of " + n + " versions passed.");
+		for (int v=0; v < n; ++v) {
+			VersionResults.Failure f = results.get(v);
+			String status;
+			if (f == null) status = "passed";
+			else if (f.hang || f.test != null) status = f.toString();
+			else status = "passed, but not checked after " + f + ", which does not fail with this version alone";
+			System.out.println("// Version " + v + " (" + versions.get(v).getName() + "): " + status);
+		}
+		for (int v=0; v < n; ++v) {
+			VersionResults.Failure f = results.get(v);
+			if (f == null || f.test == null) continue;
+			System.out.println("\n// Test for version " + v + " (" + versions.get(v).getName() + ")");
+			printTest(f.notes, f.test);
+		}
+		return failed == 0;
+	}
+
+	/**
+	 * Execute the sequence in which a version was dropped again, with that version alone,
+	 * and if it fails, record it (after shrinking) as a test in the failure.
+	 * @param f failure to reproduce
+	 * @return whether the sequence fails with the version alone
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean reproduce(VersionResults.Failure f) {
+		List<Class<? extends S>> all = versions;
+		Class<S> sut = mainClass.sutClass;
+		String typeName = mainClass.typeName;
+		selectVersion(0);
+		versions = null;
+		mainClass.sutClass = (Class<S>)all.get(f.version);
+		mainClass.typeName = mainClass.sutClass.getCanonicalName();
+		try {
+			if (generateSequence(f.seed, f.sequence, f.size)) return false;
+			shrink(null);
+			f.notes = testNotes();
+			f.test = renderTests();
+			return true;
+		} finally {
+			versions = all;
+			mainClass.sutClass = sut;
+			mainClass.typeName = typeName;
+			shrinkNote = null;
+			clear();
+		}
 	}
 
 	static enum TestState {
 		REFERENCE, SUT, FRAMEWORK;
 	}
-	private List<Supplier<String>> tests = new ArrayList<>();	
+	private Trace trace; // commands of the current sequence, created when first needed
+	private Result<?> lastExpected, lastActual; // results of the last command tested, for its failure signature
+	private final CommandStats stats = new CommandStats();
+	private final long statsInterval = Long.getLong(STATS_PROPERTY, DEFAULT_STATS_INTERVAL) * 1_000_000_000L;
+	private long lastReport = System.nanoTime();
 	private volatile TestState currentState = TestState.FRAMEWORK;
 	private volatile Command<?> currentCommand;
-	private TimeoutExecutor timer = new TimeoutExecutor(() -> doTimeout(), timeout*5); // startup can be slow
+	private TimeoutExecutor timer; // created when testing starts
+	private Campaign campaign; // null unless a worker in a parallel campaign
+	private String origin; // description of worker and seed, for campaigns
+	private int workerIndex, round; // position of a campaign worker
+
+	private Trace getTrace() {
+		if (trace == null || trace.isEmpty() && trace.getClasses() != registeredClasses.size()) {
+			trace = new Trace(maxTestSize+1, registeredClasses.size());
+		}
+		return trace;
+	}
+
+	private TimeoutExecutor getTimer() {
+		if (timer == null) {
+			timer = new TimeoutExecutor(() -> doTimeout(), timeout*5); // startup can be slow
+		}
+		return timer;
+	}
 
 	/**
 	 * Compute a random command
@@ -788,39 +1204,102 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 		for (RegisteredClass<?,?> rc : registeredClasses) {
 			rc.clear();
 		}
-		registeredIndex.clear();
-		registry.clear();
-		testObjects.clear();
-		tests.clear();
+		getTrace().clear();
+		++generation;
 	}
 	
 	protected <T> boolean test(Command<T> command) {
+		TimeoutExecutor timer = getTimer();
 		if (!timer.defer(timeout)) return false;
 		currentState = TestState.REFERENCE;
 		currentCommand = command;
+		String kind = command.getKind();
+		int size = profile == null ? -1 : structureSize(command.getReceiver());
+		long start = System.nanoTime();
 		Result<T> expected = command.execute(true);
+		long refTime = System.nanoTime() - start;
+		lastExpected = expected;
 		if (!timer.defer(timeout)) return false;
 		currentState = TestState.SUT;
+		start = System.nanoTime();
 		Result<T> actual = command.execute(false);
+		long sutTime = System.nanoTime() - start;
 		if (!timer.defer(timeout)) return false;
+		lastActual = actual;
+		if (!shrinking) {
+			stats.record(kind, refTime, expected instanceof ExceptionResult, sutTime, actual instanceof ExceptionResult);
+		}
+		if (profile != null && size >= 0) {
+			profile.record(kind, size, refTime, sutTime);
+		}
 		currentState = TestState.FRAMEWORK;
 		boolean result = expected.includes(actual);
-		tests.add(() -> expected.genAssert(this, command.code(this)));
+		if (versions != null) result = checkVersions(command, expected, result);
+		getTrace().add(command, expected, registeredClasses);
 		return result;
 	}
 	
+	/**
+	 * Compute the seed for a sequence from the master seed and the sequence index,
+	 * so that any sequence can be regenerated without generating the ones before it.
+	 * @param master master seed for the run
+	 * @param index index of the sequence (counting from zero over the whole run)
+	 * @return seed for the sequence
+	 */
+	public static long sequenceSeed(long master, long index) {
+		long z = master + (index + 1) * 0x9E3779B97F4A7C15L; // SplitMix64
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Return the master seed from which all sequences of this run are derived.
+	 * @return master seed
+	 */
+	public long getMasterSeed() {
+		return masterSeed;
+	}
+
+	/**
+	 * Set the master seed for the sequences that will be generated.
+	 * Sequences are numbered from zero again.
+	 * @param seed new master seed
+	 */
+	public void setMasterSeed(long seed) {
+		masterSeed = seed;
+		sequence = 0;
+	}
+
+	private void startSequence(int testSize) {
+		currentSequence = sequence++;
+		currentSize = testSize;
+		if (versions != null) refreshVersions();
+		random.setSeed(sequenceSeed(masterSeed, currentSequence)); // same as a new Random, without allocating
+	}
+
 	protected void test(int testSize) {
 		int count = 0;
 		clear();
-		System.out.println("// Testing sequences of " + testSize + " commands.");
+		startSequence(testSize);
+		if (campaign == null) System.out.println("// Testing sequences of " + testSize + " commands.");
 		while (count < maxTests) {
 			currentState = TestState.FRAMEWORK;
-			if (!timer.defer(timeout)) return;
-			if ((++count % 100000) == 0) {
+			if (!getTimer().defer(timeout)) return;
+			if (campaign != null && campaign.isStopped()) break;
+			if ((++count % 100000) == 0 && campaign == null) {
 				System.out.println("// " + count + " tests passed");
 			}
-			if (tests.size() > testSize) {
+			if ((count % 1000) == 0 && campaign == null && statsInterval > 0) {
+				long now = System.nanoTime();
+				if (now - lastReport >= statsInterval) {
+					lastReport = now;
+					printStats();
+				}
+			}
+			if (getTrace().size() > testSize) {
 				clear();
+				startSequence(testSize);
 			}
 			Command<?> command = randomCommand(random);
 			if (!test(command)) return;
@@ -829,6 +1308,17 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	}
 	
 	private void doTimeout() {
+		if (shrinking) {
+			// the thread is stuck in a candidate: abandon this instance
+			if (unshrunk == null) return;
+			if (output != null) {
+				output.add(shrinkSignature, unshrunkSize, testNotes(), unshrunk);
+				finishOutput();
+			} else {
+				printTest(unshrunk);
+			}
+			System.exit(0);
+		}
 		switch (currentState) {
 		case FRAMEWORK:
 			throw new AssertionError("framework has timeout?");
@@ -836,8 +1326,28 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 			System.out.println("//! Timeout in reference implementation.  Please submit this test to instructor.");
 			// fall through
 		case SUT:
-			tests.add(() -> currentCommand.code(this) + "; // timeout");
-			print();
+			getTrace().add(currentCommand, null, registeredClasses);
+			if (versions != null && currentState == TestState.SUT) {
+				int v = mainClass.selected;
+				dropVersion(v, getTimeoutKind(), true, false);
+				if (campaign == null) {
+					System.out.println("// Version " + v + " (" + versions.get(v).getName() + ") hangs: use -D" +
+							ISOLATE_PROPERTY + "=true to continue testing the other versions.");
+				}
+			}
+			if (campaign != null) {
+				// the worker thread is stuck: report for it
+				if (currentState == TestState.SUT && campaign.reportHang(this)) break;
+				campaign.reportFailure(this);
+				campaign.finished(this);
+				break;
+			}
+			if (output != null) {
+				output.add(failureSignature(true), getTrace().size(), testNotes(), renderTests());
+				finishOutput();
+			} else {
+				print();
+			}
 			System.exit(0);
 			break;
 		default:
@@ -846,31 +1356,48 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 	}
 	
 	protected void printImports() {
-		System.out.println("import junit.framework.TestCase;\n");		
+		printImports(System.out);
+	}
+
+	/**
+	 * Print the imports of the test suite.
+	 * Override this method (rather than {@link #printImports()})
+	 * so that the imports are also written to an output file.
+	 * @param out stream to print to
+	 */
+	protected void printImports(PrintStream out) {
+		out.println("import junit.framework.TestCase;\n");		
 	}
 	
+	protected void printHelperMethods() {
+		printHelperMethods(System.out);
+	}
+
 	/**
 	 * Print out methods at the beginning of the test suite.
 	 * This implementation prints "assertException" and
 	 * a version of "assertEquals" that allows an Integer to be compared to an int.
+	 * Override this method (rather than {@link #printHelperMethods()})
+	 * so that the methods are also written to an output file.
+	 * @param out stream to print to
 	 */
-	protected void printHelperMethods() {
-		System.out.println("\tprotected void assertException(Class<?> exc, Runnable r) {");
-		System.out.println("\t\ttry {");
-		System.out.println("\t\t\tr.run();");
-		System.out.println("\t\t\tassertFalse(\"should have thrown an exception.\",true);");
-		System.out.println("\t\t} catch (RuntimeException e) {");
-		System.out.println("\t\t\tif (exc == null) return;");
-		System.out.println("\t\t\tassertTrue(\"threw wrong exception type: \" + e.getClass(),exc.isInstance(e));");
-		System.out.println("\t\t}");
-		System.out.println("\t}\n");
-		System.out.println("\tprotected void assertEquals(int expected, Integer result) {");
-		System.out.println("\t\tsuper.assertEquals(Integer.valueOf(expected),result);");
-		System.out.println("\t}\n");		
+	protected void printHelperMethods(PrintStream out) {
+		out.println("\tprotected void assertException(Class<?> exc, Runnable r) {");
+		out.println("\t\ttry {");
+		out.println("\t\t\tr.run();");
+		out.println("\t\t\tassertFalse(\"should have thrown an exception.\",true);");
+		out.println("\t\t} catch (RuntimeException e) {");
+		out.println("\t\t\tif (exc == null) return;");
+		out.println("\t\t\tassertTrue(\"threw wrong exception type: \" + e.getClass(),exc.isInstance(e));");
+		out.println("\t\t}");
+		out.println("\t}\n");
+		out.println("\tprotected void assertEquals(int expected, Integer result) {");
+		out.println("\t\tsuper.assertEquals(Integer.valueOf(expected),result);");
+		out.println("\t}\n");		
 	}
 	
 	public void print() {
-		if (tests.isEmpty()) {
+		if (getTrace().isEmpty()) {
 			System.out.println("import junit.framework.TestCase;\n");
 			System.out.println("public class TestGen extends TestCase {");
 			System.out.println("\tpublic void test() {");
@@ -880,30 +1407,541 @@ public abstract class AbstractRandomTest<R,S> implements LiteralBuilder {
 			System.out.println("\n// Congratulations: no bugs found!");
 			return;	
 		}
-		printImports();
-		System.out.println("\npublic class TestGen extends TestCase {");
-		printHelperMethods();
+		printTest(renderTests());
+	}
+
+	List<String> renderTests() {
+		List<String> lines = new ArrayList<>();
+		Trace t = getTrace();
+		for (int k=0; k < t.size(); ++k) {
+			lines.add(t.getLine(k, this));
+		}
+		return lines;
+	}
+
+	/**
+	 * Return the notes printed (as comments) before the current test:
+	 * how to replay it, and how it was shrunk.
+	 * @return lines of notes, without comment markers
+	 */
+	List<String> testNotes() {
+		List<String> notes = new ArrayList<>();
+		if (currentSequence >= 0) {
+			notes.add("Sequence " + currentSequence + " of size " + currentSize + " from seed " + masterSeed +
+					": replay with -D" + REPLAY_PROPERTY + "=" + masterSeed + ":" + currentSequence + ":" + currentSize);
+		}
+		if (shrinkNote != null) notes.add(shrinkNote);
+		if (perfNote != null) notes.add(perfNote);
+		return notes;
+	}
+
+	/**
+	 * Print the start of the test class: imports, class header and helper methods.
+	 */
+	void printHeader() {
+		printHeader(System.out);
+	}
+
+	/**
+	 * Print the start of the test class to the given stream.
+	 * @param out stream to print to
+	 */
+	void printHeader(PrintStream out) {
+		printImports(out);
+		out.println("\npublic class TestGen extends TestCase {");
+		printHelperMethods(out);
+	}
+
+	void printTest(List<String> lines) {
+		printTest(testNotes(), lines);
+	}
+
+	private void printTest(List<String> notes, List<String> lines) {
+		for (String note : notes) {
+			System.out.println("// " + note);
+		}
+		printHeader();
 		System.out.println("\tpublic void test() {");
-		for (Supplier<String> test : tests) {
-			System.out.println("\t\t" + test.get());
+		for (String line : lines) {
+			System.out.println("\t\t" + line);
 		}
 		System.out.println("\t}");
 		System.out.println("}");
 	}
 	
 	public void run() {
+		String replay = System.getProperty(REPLAY_PROPERTY);
+		if (replay != null) {
+			String[] parts = replay.split(":");
+			try {
+				if (parts.length != 3) throw new NumberFormatException("expected seed:sequence:size");
+				replay(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+				return;
+			} catch (NumberFormatException e) {
+				System.err.println("Cannot parse " + REPLAY_PROPERTY + "=" + replay + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		String perf = System.getProperty(PERF_PROPERTY);
+		int perfLength = 0;
+		if (perf != null) {
+			try {
+				perfLength = Integer.parseInt(perf);
+				if (perfLength <= 0) throw new NumberFormatException("expected a positive number of commands");
+			} catch (NumberFormatException e) {
+				System.err.println("Cannot parse " + PERF_PROPERTY + "=" + perf + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		if (Boolean.getBoolean(ISOLATE_PROPERTY) && campaign == null && newInstance() != null) {
+			// run on a worker thread, so that a hang in the SUT does not end testing
+			new Campaign(this::newInstance, 1, 0, masterSeed).run();
+			return;
+		}
+		System.out.println("// Master seed " + masterSeed);
+		if (versions == null) output = openOutput();
+		TimeoutExecutor timer = getTimer();
 		try {
 			int testSize = 10;
+			int repeats = 0;
 			while (testSize < maxTestSize) {
 				test(testSize);
 				if (timer.executed()) return;
-				if (!tests.isEmpty()) break;
+				if (!getTrace().isEmpty()) {
+					if (output == null) break;
+					repeats = writeFailure(this::newInstance) ? 0 : repeats+1;
+					if (output.isFull()) break;
+					if (repeats < MAX_REPEATS) continue;
+				}
+				repeats = 0;
 				testSize *= 2;
 			}
+			if (output != null) {
+				finishOutput();
+				return;
+			}
+			if (versions != null) {
+				printStats();
+				printVersionReport(versionResults);
+				return;
+			}
+			if (getTrace().isEmpty() && perfLength > 0) {
+				checkPerformance(perfLength);
+				if (timer.executed()) return;
+			}
+			if (!getTrace().isEmpty() && perfNote == null) shrink(this::newInstance);
+		} finally {
+			timer.cancel();
+		}
+		if (!timer.executed()) {
+			printStats();
+			print();
+		}
+		clear();
+	}
+
+	/**
+	 * System property that can be set to "false" to print failing
+	 * sequences without shrinking them.
+	 */
+	public static final String SHRINK_PROPERTY = "edu.uwm.cs.random.shrink";
+
+	/**
+	 * System property that can be set to "true" to isolate hangs:
+	 * commands are executed on a worker thread, and if the SUT hangs,
+	 * the hang is recorded and testing continues on a new worker
+	 * (see {@link Campaign#setIsolateHangs(boolean)}).
+	 * A single run is then executed as a campaign with one worker.
+	 */
+	public static final String ISOLATE_PROPERTY = "edu.uwm.cs.random.isolate";
+
+	/**
+	 * System property giving the name of a file to which failing tests are written
+	 * as they are found, each as a method of one TestGen class,
+	 * rather than stopping at the first failure.
+	 * Testing continues until {@link #FAILURES_PROPERTY} distinct failures have been found.
+	 * Failures are distinct if they have different signatures (see {@link FailureSignature}):
+	 * only the shortest reproducer of each is kept, with a count of how often it was found.
+	 */
+	public static final String OUTPUT_PROPERTY = "edu.uwm.cs.random.output";
+	/**
+	 * System property giving the number of distinct failures
+	 * after which testing stops, when writing failures to a file.
+	 */
+	public static final String FAILURES_PROPERTY = "edu.uwm.cs.random.failures";
+	public static final int DEFAULT_FAILURES = 10;
+	/**
+	 * Number of failures in a row with signatures that have already been found,
+	 * after which testing moves on to longer sequences.
+	 */
+	public static final int MAX_REPEATS = 10;
+
+	private TestGenWriter output; // where failures are written, or null to stop at the first
+
+	/**
+	 * Open the file given by {@link #OUTPUT_PROPERTY}, if any.
+	 * @return writer for the file, or null if the property is not set.
+	 */
+	TestGenWriter openOutput() {
+		String filename = System.getProperty(OUTPUT_PROPERTY);
+		if (filename == null) return null;
+		try {
+			TestGenWriter result = new TestGenWriter(filename, this, Integer.getInteger(FAILURES_PROPERTY, DEFAULT_FAILURES));
+			System.out.println("// Writing up to " + result.getLimit() + " failures to " + filename);
+			return result;
+		} catch (IOException e) {
+			System.err.println("Cannot write " + OUTPUT_PROPERTY + "=" + filename + ": " + e.getMessage());
+			System.exit(1);
+			return null;
+		}
+	}
+
+	private void finishOutput() {
+		printStats();
+		output.close();
+		for (String line : output.report()) {
+			System.out.println("// " + line);
+		}
+		System.out.println("// " + output.size() + " distinct failures written to " + output.getFilename());
+	}
+
+	/**
+	 * Return the signature of the failure at the end of the current sequence.
+	 * @param hang whether the last command timed out
+	 * @return signature of the failure
+	 */
+	FailureSignature failureSignature(boolean hang) {
+		Trace t = getTrace();
+		String kind = t.isEmpty() ? null : t.getCommand(t.size()-1).getKind();
+		return new FailureSignature(kind, lastExpected, hang ? null : lastActual);
+	}
+
+	/**
+	 * Record the current failing sequence in the output file, and then clear it
+	 * so that testing can continue.  The sequence is only shrunk
+	 * if it could be kept: its signature is new, or it is already shorter
+	 * than the reproducer kept for its signature.  Otherwise it is just counted.
+	 * @param factory source of helper instances for shrinking, may be null
+	 * @return whether the failure has a new signature
+	 */
+	private boolean writeFailure(Supplier<? extends AbstractRandomTest<?,?>> factory) {
+		FailureSignature sig = failureSignature(false);
+		boolean added = false;
+		if (output.wants(sig, getTrace().size())) {
+			shrinkSignature = sig;
+			shrink(factory);
+			added = output.add(sig, getTrace().size(), testNotes(), renderTests());
+		} else {
+			output.hit(sig);
+		}
+		shrinkSignature = null;
+		shrinkNote = null;
+		clear();
+		return added;
+	}
+
+	private volatile boolean shrinking = false;
+	private List<String> unshrunk; // printed if shrinking times out, null for helpers
+	private int unshrunkSize; // number of commands in unshrunk
+	private String shrinkNote;
+	private FailureSignature shrinkSignature; // of the failure being shrunk (when writing to a file), which candidates must keep
+	private Trace shrinkTrace; // the failing sequence being shrunk
+
+	/**
+	 * Create a new instance of this random test to help shrink a failing sequence.
+	 * This implementation uses a constructor without parameters, if any.
+	 * @return new instance, or null if one cannot be created.
+	 */
+	@SuppressWarnings("unchecked")
+	protected AbstractRandomTest<R,S> newInstance() {
+		try {
+			java.lang.reflect.Constructor<?> cons = getClass().getDeclaredConstructor();
+			cons.setAccessible(true);
+			return (AbstractRandomTest<R,S>)cons.newInstance();
+		} catch (ReflectiveOperationException|RuntimeException e) {
+			return null;
+		}
+	}
+
+	private int[] registrySizes() {
+		int n = registeredClasses.size();
+		int[] result = new int[n];
+		for (int j=0; j < n; ++j) {
+			result[j] = registeredClasses.get(j).size();
+		}
+		return result;
+	}
+
+	private int classIndex(TestClass<?,?> tc) {
+		for (int j=0; j < registeredClasses.size(); ++j) {
+			if (registeredClasses.get(j) == tc) return j;
+		}
+		return -1;
+	}
+
+	/**
+	 * Shrink the current failing sequence to a smaller one that still fails,
+	 * leaving it as the current sequence.
+	 * @param factory source of helper instances, which may return null.
+	 * @see Shrinker
+	 */
+	void shrink(Supplier<? extends AbstractRandomTest<?,?>> factory) {
+		if (!Boolean.parseBoolean(System.getProperty(SHRINK_PROPERTY, "true"))) return;
+		// a timer that was canceled (e.g. when a campaign worker finished) will never fire again
+		boolean newTimer = timer != null && (timer.isCanceled() || timer.executed());
+		if (newTimer) timer = null;
+		int original = getTrace().size();
+		unshrunk = renderTests();
+		unshrunkSize = original;
+		try {
+			prepareShrink();
+			List<Integer> best = new Shrinker(this, factory).shrink();
+			if (tryCandidate(best) == null) {
+				// not reproducible: go back to the original sequence
+				best = new ArrayList<>();
+				for (int k=0; k < original; ++k) best.add(k);
+				tryCandidate(best);
+			}
+		} finally {
+			shrinking = false;
+			if (newTimer && timer != null) timer.cancel();
+		}
+		if (getTrace().size() < original) {
+			shrinkNote = "Shrunk from " + original + " to " + getTrace().size() + " commands.";
+		}
+		unshrunk = null;
+	}
+
+	/**
+	 * Regenerate a failing sequence, to prepare this instance
+	 * to help shrink it.
+	 * @param seed master seed
+	 * @param index index of sequence
+	 * @param testSize size of sequences
+	 * @param length number of commands in the failing sequence
+	 * @return whether the sequence was reproduced exactly
+	 */
+	boolean regenerate(long seed, long index, int testSize, int length) {
+		shrinking = true; // a timeout must not exit
+		boolean passed = generateSequence(seed, index, testSize);
+		if (passed || getTimer().executed() || getTrace().size() != length) return false;
+		prepareShrink();
+		return true;
+	}
+
+	/**
+	 * Return a helper for shrinking the current failing sequence.
+	 * @param helper new instance of the same test, may be null
+	 * @return helper which has regenerated the same failing sequence, or null
+	 */
+	AbstractRandomTest<?,?> makeHelper(AbstractRandomTest<?,?> helper) {
+		if (helper == null || helper.getClass() != getClass()) return null;
+		if (!helper.regenerate(masterSeed, currentSequence, currentSize, getTrace().size())) {
+			helper.cancelTimer();
+			return null;
+		}
+		helper.shrinkSignature = shrinkSignature;
+		return helper;
+	}
+
+	private void prepareShrink() {
+		shrinking = true;
+		shrinkTrace = getTrace().copy();
+	}
+
+	/**
+	 * Return whether this instance is stuck in a candidate that timed out.
+	 * @return whether the timeout has happened.
+	 */
+	boolean isStuck() {
+		return timer != null && timer.executed();
+	}
+
+	void cancelTimer() {
+		if (timer != null) timer.cancel();
+	}
+
+	/**
+	 * Keep the timer of this instance from going off while it waits for helpers,
+	 * allowing time for the given number of commands.
+	 * (Helpers have their own timers for candidates that do not terminate.)
+	 * @param commands number of commands to allow time for
+	 */
+	void deferTimer(int commands) {
+		if (timer != null) timer.defer((long)timeout * Math.max(commands, 1));
+	}
+
+	/**
+	 * Execute some of the commands of the failing sequence being shrunk, with fresh objects.
+	 * Indices of registered objects are remapped: an object created
+	 * by a command in the original sequence is mapped to the object created by the same command
+	 * in the candidate.  Commands that refer to objects that were not created are skipped.
+	 * @param candidate positions of commands in the original sequence, in increasing order
+	 * When writing failures to a file, a candidate that fails differently
+	 * (with a different signature) counts as passing, so that shrinking does not turn one failure into another.
+	 * @return positions of the commands executed up to and including the first one whose
+	 * results differ, or null if the candidate passes or times out.
+	 */
+	List<Integer> tryCandidate(List<Integer> candidate) {
+		clear();
+		int nc = registeredClasses.size();
+		int[][] map = new int[nc][];
+		for (int j=0; j < nc; ++j) {
+			map[j] = new int[j < shrinkTrace.getClasses() ? shrinkTrace.getSize(shrinkTrace.size()-1, j) : 0];
+			Arrays.fill(map[j], Command.Remapper.MISSING);
+		}
+		Command.Remapper remapper = (tc, i) -> {
+			if (i < 0) return i;
+			int j = classIndex(tc);
+			if (j < 0) return i;
+			if (i >= map[j].length) return Command.Remapper.MISSING;
+			return map[j][i];
+		};
+		List<Integer> executed = new ArrayList<>();
+		for (int k : candidate) {
+			Command<?> c = shrinkTrace.getCommand(k).remap(remapper);
+			if (c == null) continue;
+			executed.add(k);
+			int[] before = registrySizes();
+			boolean ok;
+			try {
+				ok = test(c);
+			} catch (RuntimeException e) {
+				return null;
+			}
+			if (getTimer().executed()) return null;
+			int[] after = registrySizes();
+			for (int j=0; j < map.length; ++j) {
+				int oldBefore = shrinkTrace.getSize(k-1, j);
+				int oldAfter = shrinkTrace.getSize(k, j);
+				for (int d=0; oldBefore+d < oldAfter && before[j]+d < after[j]; ++d) {
+					map[j][oldBefore+d] = before[j]+d;
+				}
+			}
+			if (!ok) return shrinkSignature == null || shrinkSignature.equals(failureSignature(false)) ? executed : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Execute a single sequence of a run directly and print it as a test.
+	 * The sequence is regenerated from its seed, without generating the earlier sequences.
+	 * @param seed master seed of the run
+	 * @param index index of the sequence in the run
+	 * @param testSize size of sequences when it was generated
+	 * @return true if the sequence passed
+	 */
+	public boolean replay(long seed, long index, int testSize) {
+		TimeoutExecutor timer = getTimer();
+		boolean passed;
+		try {
+			passed = generateSequence(seed, index, testSize);
 		} finally {
 			timer.cancel();
 		}
-		if (!timer.executed()) print();
+		if (timer.executed()) return false;
+		print();
+		if (passed) System.out.println("\n// Sequence " + index + " passed.");
 		clear();
+		return passed;
+	}
+
+	private boolean generateSequence(long seed, long index, int testSize) {
+		masterSeed = seed;
+		sequence = index;
+		clear();
+		startSequence(testSize);
+		boolean passed = true;
+		for (int i=0; i <= testSize && passed; ++i) {
+			passed = test(randomCommand(random));
+		}
+		return passed;
+	}
+
+	/**
+	 * Return the number of commands in the failing test found, if any.
+	 * @return number of commands, or zero if no failure has been found.
+	 */
+	int getFailureSize() {
+		return getTrace().size();
+	}
+
+	/**
+	 * Return a description of the worker and seed that produced
+	 * the current test sequence in a campaign.
+	 * @return description, or null if not a campaign worker
+	 */
+	String getOrigin() {
+		return origin;
+	}
+
+	int getWorkerIndex() {
+		return workerIndex;
+	}
+
+	/**
+	 * Return the kind of command that was executing when a timeout happened.
+	 * @return kind of command, or null if none
+	 */
+	String getTimeoutKind() {
+		Command<?> c = currentCommand;
+		return c == null ? null : c.getKind();
+	}
+
+	/**
+	 * Run as one worker of a parallel campaign.
+	 * Like {@link #run()}, sequences of increasing size are tried,
+	 * but the campaign is told of a failure instead of it being printed
+	 * (or, if the campaign has an output file, the failure is written to it
+	 * and testing continues), and testing stops early if the campaign is stopped.
+	 * If the campaign has a deadline, the sizes are tried again
+	 * with new seeds until the deadline is reached.
+	 * @param c campaign this is a worker for
+	 * @param index index of this worker, used to choose its seeds
+	 * @param replaced worker that hung, whose sequences this one continues after, or null
+	 */
+	void runWorker(Campaign c, int index, AbstractRandomTest<?,?> replaced) {
+		campaign = c;
+		workerIndex = index;
+		versionResults = c.getVersionResults();
+		output = c.getOutput();
+		TimeoutExecutor timer = getTimer();
+		try {
+			round = replaced == null ? 0 : replaced.round;
+			for (boolean resume = replaced != null; !c.isStopped(); ++round, resume = false) {
+				int testSize = 10;
+				if (resume) {
+					// continue with the sequence after the one that hung
+					masterSeed = replaced.masterSeed;
+					sequence = replaced.currentSequence + 1;
+					testSize = replaced.currentSize;
+				} else {
+					setMasterSeed(c.getSeed(index, round));
+				}
+				origin = "worker " + index;
+				int repeats = 0;
+				while (testSize < maxTestSize && !c.isStopped()) {
+					test(testSize);
+					if (timer.executed()) return;
+					if (!getTrace().isEmpty()) {
+						if (output == null) {
+							c.reportFailure(this);
+							return;
+						}
+						repeats = writeFailure(null) ? 0 : repeats+1;
+						if (output.isFull() && !c.hasDeadline()) {
+							c.stop();
+							return;
+						}
+						if (repeats < MAX_REPEATS) continue;
+					}
+					repeats = 0;
+					testSize *= 2;
+				}
+				if (!c.hasDeadline()) break;
+			}
+		} finally {
+			timer.cancel();
+		}
 	}
 }
@@ -0,0 +1,313 @@
+package edu.uwm.cs.random;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * A parallel random testing campaign.
+ * Each worker thread uses its own instance of the random test (from a factory)
+ * with its own seed, so that they share no registries or traces.
+ * All workers stop when any of them finds a failure, or when the shared
+ * deadline passes.  The smallest failing test found by any worker is shrunk and printed.
+ * For example, a random test class can use the following main method to use all the cores:
+ * <pre>
+ * new Campaign(() -&gt; new MyRandomTest(), Runtime.getRuntime().availableProcessors(), 5*60*1000).run();
+ * </pre>
+ * Without a deadline (zero), each worker performs one run,
+ * as {@link AbstractRandomTest#run()} would, but with different seeds.
+ * <p>
+ * If hangs are isolated (see {@link #setIsolateHangs(boolean)}), a worker whose SUT
+ * times out is abandoned (along with its objects) and the hang is recorded;
+ * a new worker with a fresh instance takes its place.
+ * At the end, the hangs are printed as well as the smallest failure.
+ * <p>
+ * If failures are written to a file (see {@link AbstractRandomTest#OUTPUT_PROPERTY}),
+ * workers do not stop at a failure: each writes its failures to the shared file,
+ * and the campaign stops when enough distinct failures have been found
+ * (or, with a deadline, keeps counting failures until the deadline).
+ */
+public class Campaign {
+	private final Supplier<? extends AbstractRandomTest<?,?>> factory;
+	private final int workers;
+	private final long millis;
+	private long deadline; // set when the campaign is run, zero for no limit
+	private final long baseSeed;
+
+	/** Number of hangs after which the campaign stops, since each may leave a thread running. */
+	public static final int MAX_HANGS = 8;
+
+	private volatile boolean stopped = false;
+	private boolean isolateHangs = Boolean.getBoolean(AbstractRandomTest.ISOLATE_PROPERTY);
+	private AbstractRandomTest<?,?> best; // smallest failure so far
+	private final Set<AbstractRandomTest<?,?>> done = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final CountDownLatch allDone;
+	private final Map<AbstractRandomTest<?,?>,Thread> instances = new IdentityHashMap<>();
+	private final Map<String,List<String>> hangs = new LinkedHashMap<>(); // first hang of each kind of command
+	private final Map<String,AbstractRandomTest<?,?>> hangWorkers = new HashMap<>();
+	private final Map<String,Integer> hangCounts = new HashMap<>();
+	private int totalHangs;
+	private final VersionResults versionResults = new VersionResults();
+	private final CommandStats stats = new CommandStats();
+	private TestGenWriter output; // shared by the workers, or null
+
+	/**
+	 * Create a campaign with a random base seed.
+	 * @param factory creates a new random test instance for each worker
+	 * @param workers number of worker threads, must be positive
+	 * @param millis time limit in milliseconds, or zero for no limit
+	 */
+	public Campaign(Supplier<? extends AbstractRandomTest<?,?>> factory, int workers, long millis) {
+		this(factory, workers, millis, Long.getLong(AbstractRandomTest.SEED_PROPERTY, System.nanoTime()));
+	}
+
+	/**
+	 * Create a campaign.
+	 * @param factory creates a new random test instance for each worker
+	 * @param workers number of worker threads, must be positive
+	 * @param millis time limit in milliseconds, or zero for no limit
+	 * @param seed base seed from which each worker's master seeds are computed
+	 */
+	public Campaign(Supplier<? extends AbstractRandomTest<?,?>> factory, int workers, long millis, long seed) {
+		if (workers < 1) throw new IllegalArgumentException("need at least one worker");
+		this.factory = factory;
+		this.workers = workers;
+		this.millis = millis;
+		this.baseSeed = seed;
+		allDone = new CountDownLatch(workers);
+	}
+
+	/**
+	 * Return whether workers should stop: a failure has been found or time is up.
+	 * @return whether to stop
+	 */
+	public boolean isStopped() {
+		if (stopped) return true;
+		if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+			stopped = true;
+		}
+		return stopped;
+	}
+
+	/**
+	 * Set whether hangs in the SUT are isolated, rather than ending the campaign.
+	 * The default is given by the system property {@link AbstractRandomTest#ISOLATE_PROPERTY}.
+	 * @param isolate whether to isolate hangs
+	 */
+	public void setIsolateHangs(boolean isolate) {
+		isolateHangs = isolate;
+	}
+
+	/**
+	 * Stop all workers.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Return the record of failed SUT versions shared by the workers,
+	 * when several versions are tested at once.
+	 * @return record of failed versions
+	 */
+	VersionResults getVersionResults() {
+		return versionResults;
+	}
+
+	/**
+	 * Return the file to which workers write failures.
+	 * @return writer for the file, or null if workers stop at the first failure
+	 */
+	TestGenWriter getOutput() {
+		return output;
+	}
+
+	boolean hasDeadline() {
+		return millis > 0;
+	}
+
+	/**
+	 * Return the seed a worker should use for a round.
+	 * @param index worker index
+	 * @param round number of rounds already done by this worker
+	 * @return seed to use
+	 */
+	long getSeed(int index, int round) {
+		return AbstractRandomTest.sequenceSeed(baseSeed, (long)round * workers + index);
+	}
+
+	/**
+	 * Record that a worker found a failure, and stop all workers.
+	 * @param worker random test instance whose current sequence fails
+	 */
+	synchronized void reportFailure(AbstractRandomTest<?,?> worker) {
+		stopped = true;
+		if (best == null || worker.getFailureSize() < best.getFailureSize()) {
+			best = worker;
+		}
+	}
+
+	/**
+	 * Record that a worker is stuck in the SUT, if hangs are isolated,
+	 * and start a new worker to take its place.
+	 * The stuck worker is finished as far as the campaign is concerned,
+	 * but it does not count as done, since its replacement continues.
+	 * @param worker random test instance whose current sequence hangs
+	 * @return whether the hang was recorded, false if hangs are not isolated
+	 * and it should be reported as a failure
+	 */
+	boolean reportHang(AbstractRandomTest<?,?> worker) {
+		if (!isolateHangs) return false;
+		String kind = worker.getTimeoutKind();
+		Thread stuck;
+		synchronized (this) {
+			if (++totalHangs >= MAX_HANGS) stopped = true;
+			hangCounts.merge(kind, 1, Integer::sum);
+			if (!hangs.containsKey(kind)) {
+				hangs.put(kind, worker.renderTests());
+				hangWorkers.put(kind, worker);
+			}
+		}
+		synchronized (instances) {
+			stuck = instances.get(worker);
+		}
+		synchronized (done) {
+			done.add(worker); // its replacement will count down for it
+		}
+		if (stuck != null) stuck.setPriority(Thread.MIN_PRIORITY);
+		if (isStopped()) {
+			allDone.countDown();
+		} else {
+			startWorker(factory.get(), worker.getWorkerIndex(), worker);
+		}
+		return true;
+	}
+
+	/**
+	 * Record that a worker is finished (or is stuck and should not be waited for).
+	 * Only the first notification for a worker counts.
+	 * @param worker random test instance
+	 */
+	void finished(AbstractRandomTest<?,?> worker) {
+		synchronized (done) {
+			if (!done.add(worker)) return;
+		}
+		allDone.countDown();
+	}
+
+	/**
+	 * Return the statistics of the commands executed by all workers.
+	 * These are only available after the campaign has run.
+	 * @return combined statistics
+	 */
+	public CommandStats getStats() {
+		return stats;
+	}
+
+	private void startWorker(AbstractRandomTest<?,?> test, int index, AbstractRandomTest<?,?> replaced) {
+		Thread t = new Thread(() -> {
+			try {
+				test.runWorker(this, index, replaced);
+			} finally {
+				finished(test);
+			}
+		}, "random-test-worker-" + index);
+		t.setDaemon(true); // a worker stuck in the SUT must not keep the JVM alive
+		synchronized (instances) {
+			instances.put(test, t);
+		}
+		t.start();
+	}
+
+	/**
+	 * Run the campaign and print the smallest failing test found,
+	 * or a test indicating no bugs were found.
+	 * @return true if no failure was found
+	 */
+	public boolean run() {
+		System.out.println("// Random testing with " + workers + " workers, base seed " + baseSeed +
+				(millis > 0 ? ", " + millis + " ms" : ""));
+		// start timing here, not when the campaign was created
+		deadline = millis > 0 ? System.currentTimeMillis() + millis : 0;
+		AbstractRandomTest<?,?> reporter = factory.get();
+		if (!reporter.hasVersions()) output = reporter.openOutput();
+		for (int i=0; i < workers; ++i) {
+			startWorker(factory.get(), i, null);
+		}
+		try {
+			allDone.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopped = true;
+		}
+		AbstractRandomTest<?,?> result;
+		synchronized (this) {
+			result = best;
+		}
+		synchronized (instances) {
+			for (AbstractRandomTest<?,?> test : instances.keySet()) {
+				stats.add(test.getStats());
+			}
+		}
+		for (String line : stats.report()) {
+			System.out.println("// " + line);
+		}
+		Map<String,List<String>> hangTests;
+		synchronized (this) {
+			hangTests = new LinkedHashMap<>(hangs);
+		}
+		if (output != null) {
+			for (Map.Entry<String,List<String>> e : hangTests.entrySet()) {
+				AbstractRandomTest<?,?> worker = hangWorkers.get(e.getKey());
+				FailureSignature sig = worker.failureSignature(true);
+				output.add(sig, worker.getFailureSize(), worker.testNotes(), e.getValue());
+				output.hit(sig, hangCounts.get(e.getKey()) - 1);
+			}
+			if (result != null && result.isStuck()) {
+				output.add(result.failureSignature(true), result.getFailureSize(), result.testNotes(), result.renderTests());
+			}
+			output.close();
+			for (String line : output.report()) {
+				System.out.println("// " + line);
+			}
+			System.out.println("// " + output.size() + " distinct failures written to " + output.getFilename());
+			return output.size() == 0;
+		}
+		for (Map.Entry<String,List<String>> e : hangTests.entrySet()) {
+			AbstractRandomTest<?,?> worker = hangWorkers.get(e.getKey());
+			int count = hangCounts.get(e.getKey());
+			System.out.println("// Hang in " + e.getKey() + " found by " + worker.getOrigin() +
+					(count > 1 ? " (" + count + " hangs in all)" : ""));
+			worker.printTest(e.getValue());
+			System.out.println();
+		}
+		if (totalHangs >= MAX_HANGS) {
+			System.out.println("// Stopped after " + totalHangs + " hangs.");
+		}
+		if (reporter.hasVersions()) {
+			if (result != null && result.isStuck()) {
+				System.out.println("// Hang found by " + result.getOrigin());
+				result.print();
+				System.out.println();
+			}
+			boolean passed = reporter.printVersionReport(versionResults);
+			reporter.cancelTimer();
+			return passed;
+		}
+		if (result == null && !hangTests.isEmpty()) return false;
+		if (result == null) {
+			reporter.print();
+			return true;
+		}
+		System.out.println("// Smallest failure found by " + result.getOrigin());
+		if (!result.isStuck()) result.shrink(factory);
+		result.print();
+		return false;
+	}
+}
@@ -60,4 +60,15 @@ public class ChoiceResult<T> implements Result<T> {
 		return false;
 	}
 
+	@Override
+	public boolean includesAlso(Result<T> x) {
+		if (delegate == null) return includes(x);
+		return delegate.includesAlso(x);
+	}
+
+	@Override
+	public boolean allows(Result<T> x) {
+		return x instanceof NormalResult<?> && possibilities.contains(x.getValue());
+	}
+
 }
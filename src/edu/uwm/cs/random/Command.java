@@ -19,6 +19,57 @@ public interface Command<T> {
 	 */
 	public String code(LiteralBuilder lb); //XXX: lb not needed (too late) 
 
+	/**
+	 * Return the kind of this command, used to group statistics.
+	 * Method calls use the method name.
+	 * @return kind of command, never null
+	 */
+	public default String getKind() {
+		return getClass().getSimpleName();
+	}
+
+	/**
+	 * Return the reference object this command is applied to, if any.
+	 * This is used to estimate the size of the structure a command works on.
+	 * @return reference receiver, or null if none (e.g. for constructors)
+	 */
+	public default Object getReceiver() {
+		return null;
+	}
+
+	/**
+	 * A mapping of the indices of registered objects, used when
+	 * a command is re-executed in a sequence in which some of the objects
+	 * were created by different commands (or not at all).
+	 */
+	public interface Remapper {
+		/**
+		 * The result of mapping an index of an object that does not exist in the new sequence.
+		 */
+		public static final int MISSING = Integer.MIN_VALUE;
+
+		/**
+		 * Map an index of a registered object.
+		 * @param tc registered class of the object
+		 * @param index index in the original sequence (negative for null)
+		 * @return index in the new sequence, negative for null,
+		 * or {@link #MISSING} if the object does not exist.
+		 */
+		public int remap(TestClass<?,?> tc, int index);
+	}
+
+	/**
+	 * Return a version of this command with the indices of registered objects mapped.
+	 * This implementation is for commands that do not refer to registered objects.
+	 * Commands that refer to objects return themselves if no index changes,
+	 * and otherwise a new command of the (standard) class they extend.
+	 * @param r remapper to use, must not be null
+	 * @return command with mapped indices, or null if some object does not exist.
+	 */
+	public default Command<T> remap(Remapper r) {
+		return this;
+	}
+
 	public default String code(String template, String... args) {
 		StringBuilder sb = new StringBuilder();
 		if (args.length > 0 && template.indexOf('$') < 0) {
@@ -79,6 +130,7 @@ public interface Command<T> {
 		private final TestClass<R,S> testClass;
 		private final Supplier<R> rConstr;
 		private final Supplier<S> sConstr;
+		private String kind;
 
 		public NewCommand(TestClass<R,S> tc) {
 			this(tc, () -> makeInstance(tc.getRefClass()), () -> makeInstance(tc.getSUTClass()));
@@ -116,20 +168,33 @@ public interface Command<T> {
 		public String code(LiteralBuilder lb) {
 			return "new " + testClass.getTypeName() + "()";
 		}
+
+		@Override
+		public String getKind() {
+			if (kind == null) kind = "new " + testClass.getTypeName(); // computed once: called for every execution
+			return kind;
+		}
 	}
 
 	public static class NewCommand1<R,S,U> implements Command<Union<R,S>> {
 		private final TestClass<R,S> testClass;
-		private final U arg;
+		private U arg;
 		private final Function<U,R> rConstr;
 		private final Function<U,S> sConstr;
 
+		private String kind;
+
 		public NewCommand1(TestClass<R,S> tc, U a, Function<U,R> rc, Function<U,S> sc) {
 			testClass = tc;
 			arg = a;
 			rConstr = rc;
 			sConstr = sc;
 		}
+
+		NewCommand1<R,S,U> set(U a) {
+			arg = a;
+			return this;
+		}
 		
 		@Override
 		public Result<Union<R, S>> execute(boolean asReference) {
@@ -148,15 +213,23 @@ public interface Command<T> {
 		public String code(LiteralBuilder lb) {
 			return "new " + testClass.getTypeName() + "(" + lb.toString(arg) + ")";
 		}
+
+		@Override
+		public String getKind() {
+			if (kind == null) kind = "new " + testClass.getTypeName(); // computed once: called for every execution
+			return kind;
+		}
 	}
 
 	public static class NewCommand2<R,S,U,V> implements Command<Union<R,S>> {
 		private final TestClass<R,S> testClass;
-		private final U arg1;
-		private final V arg2;
+		private U arg1;
+		private V arg2;
 		private final BiFunction<U,V,R> rConstr;
 		private final BiFunction<U,V,S> sConstr;
 
+		private String kind;
+
 		public NewCommand2(TestClass<R,S> tc, U a, V b, BiFunction<U,V,R> rc, BiFunction<U,V,S> sc) {
 			testClass = tc;
 			arg1 = a;
@@ -164,6 +237,12 @@ public interface Command<T> {
 			rConstr = rc;
 			sConstr = sc;
 		}
+
+		NewCommand2<R,S,U,V> set(U a, V b) {
+			arg1 = a;
+			arg2 = b;
+			return this;
+		}
 		
 		@Override
 		public Result<Union<R, S>> execute(boolean asReference) {
@@ -183,11 +262,17 @@ public interface Command<T> {
 			return "new " + testClass.getTypeName() + "(" + 
 					lb.toString(arg1) + "," + lb.toString(arg2) + ")";
 		}
+
+		@Override
+		public String getKind() {
+			if (kind == null) kind = "new " + testClass.getTypeName(); // computed once: called for every execution
+			return kind;
+		}
 	}
 
 	public static class Command0<R,S,T> implements Command<T> {
 		private final TestClass<R,S> testClass;
-		private final int index;
+		private int index;
 		protected final Function<R,Result<T>> refFunc;
 		protected final Function<S,Result<T>> sutFunc;
 		protected final String methodName;
@@ -200,6 +285,11 @@ public interface Command<T> {
 			methodName = mn;
 		}
 
+		Command0<R,S,T> set(int i) {
+			index = i;
+			return this;
+		}
+
 		@Override
 		public Result<T> execute(boolean asReference) {
 			if (asReference) {
@@ -213,12 +303,30 @@ public interface Command<T> {
 		public String code(LiteralBuilder lb) {
 			return code(methodName, testClass.getIdentifier(index));
 		}		
+
+		@Override
+		public Command<T> remap(Remapper r) {
+			int i = r.remap(testClass, index);
+			if (i == index) return this;
+			if (i == Remapper.MISSING) return null;
+			return new Command0<>(testClass, i, refFunc, sutFunc, methodName);
+		}
+
+		@Override
+		public String getKind() {
+			return methodName;
+		}
+
+		@Override
+		public Object getReceiver() {
+			return testClass.getRefObject(index);
+		}
 	}
 
 	public static class Command1<R,S,T,U> implements Command<T> {
 		private final TestClass<R,S> testClass;
-		private final int index;
-		private final U arg;
+		private int index;
+		private U arg;
 		protected final BiFunction<R,U,Result<T>> refFunc;
 		protected final BiFunction<S,U,Result<T>> sutFunc;
 		protected final String methodName;
@@ -232,6 +340,12 @@ public interface Command<T> {
 			methodName = mn;
 		}
 
+		Command1<R,S,T,U> set(int i, U a) {
+			index = i;
+			arg = a;
+			return this;
+		}
+
 		@Override
 		public Result<T> execute(boolean asReference) {
 			if (asReference) {
@@ -245,13 +359,31 @@ public interface Command<T> {
 		public String code(LiteralBuilder lb) {
 			return code(methodName, testClass.getIdentifier(index), lb.toString(arg));
 		}		
+
+		@Override
+		public Command<T> remap(Remapper r) {
+			int i = r.remap(testClass, index);
+			if (i == index) return this;
+			if (i == Remapper.MISSING) return null;
+			return new Command1<>(testClass, i, arg, refFunc, sutFunc, methodName);
+		}
+
+		@Override
+		public String getKind() {
+			return methodName;
+		}
+
+		@Override
+		public Object getReceiver() {
+			return testClass.getRefObject(index);
+		}
 	}
 
 	public static class Command2<R,S,T,U,V> implements Command<T> {
 		private final TestClass<R,S> testClass;
-		private final int index;
-		private final U arg1;
-		private final V arg2;
+		private int index;
+		private U arg1;
+		private V arg2;
 		protected final TriFunction<R,U,V,Result<T>> refFunc;
 		protected final TriFunction<S,U,V,Result<T>> sutFunc;
 		protected final String methodName;
@@ -266,6 +398,13 @@ public interface Command<T> {
 			methodName = mn;
 		}
 
+		Command2<R,S,T,U,V> set(int i, U a, V b) {
+			index = i;
+			arg1 = a;
+			arg2 = b;
+			return this;
+		}
+
 		@Override
 		public Result<T> execute(boolean asReference) {
 			if (asReference) {
@@ -279,13 +418,31 @@ public interface Command<T> {
 		public String code(LiteralBuilder lb) {
 			return code(methodName, testClass.getIdentifier(index), lb.toString(arg1), lb.toString(arg2));
 		}		
+
+		@Override
+		public Command<T> remap(Remapper r) {
+			int i = r.remap(testClass, index);
+			if (i == index) return this;
+			if (i == Remapper.MISSING) return null;
+			return new Command2<>(testClass, i, arg1, arg2, refFunc, sutFunc, methodName);
+		}
+
+		@Override
+		public String getKind() {
+			return methodName;
+		}
+
+		@Override
+		public Object getReceiver() {
+			return testClass.getRefObject(index);
+		}
 	}
 
 	public static class CommandM<R,S,T,U,V> implements Command<T> {
 		protected final TestClass<R,S> recClass;
 		protected final TestClass<U,V> argClass;
-		protected final int recIndex;
-		protected final int argIndex;
+		protected int recIndex;
+		protected int argIndex;
 		protected final BiFunction<R,U,Result<T>> refFunc;
 		protected final BiFunction<S,V,Result<T>> sutFunc;
 		protected final String methodName;
@@ -300,6 +457,12 @@ public interface Command<T> {
 			methodName = mn;
 		}
 
+		CommandM<R,S,T,U,V> set(int i, int j) {
+			recIndex = i;
+			argIndex = j;
+			return this;
+		}
+
 		@Override
 		public Result<T> execute(boolean asReference) {
 			if (asReference) {
@@ -313,6 +476,25 @@ public interface Command<T> {
 		public String code(LiteralBuilder lb) {
 			return code(methodName, recClass.getIdentifier(recIndex), argClass.getIdentifier(argIndex));
 		}		
+
+		@Override
+		public Command<T> remap(Remapper r) {
+			int i = r.remap(recClass, recIndex);
+			int j = r.remap(argClass, argIndex);
+			if (i == recIndex && j == argIndex) return this;
+			if (i == Remapper.MISSING || j == Remapper.MISSING) return null;
+			return new CommandM<>(recClass, argClass, i, j, refFunc, sutFunc, methodName);
+		}
+
+		@Override
+		public String getKind() {
+			return methodName;
+		}
+
+		@Override
+		public Object getReceiver() {
+			return recClass.getRefObject(recIndex);
+		}
 	}
 	
 	public static class CommandR<R,S,T> extends CommandM<R,S,T,R,S> {
@@ -324,9 +506,9 @@ public interface Command<T> {
 	public static class CommandMP<R,S,T,U,V,W> implements Command<T> {
 		protected final TestClass<R,S> recClass;
 		protected final TestClass<U,V> argClass;
-		protected final int recIndex;
-		protected final int argIndex;
-		protected final W arg;
+		protected int recIndex;
+		protected int argIndex;
+		protected W arg;
 		protected final TriFunction<R,U,W,Result<T>> refFunc;
 		protected final TriFunction<S,V,W,Result<T>> sutFunc;
 		protected final String methodName;
@@ -342,6 +524,13 @@ public interface Command<T> {
 			methodName = mn;
 		}
 
+		CommandMP<R,S,T,U,V,W> set(int i, int j, W w) {
+			recIndex = i;
+			argIndex = j;
+			arg = w;
+			return this;
+		}
+
 		@Override
 		public Result<T> execute(boolean asReference) {
 			if (asReference) {
@@ -355,14 +544,33 @@ public interface Command<T> {
 		public String code(LiteralBuilder lb) {
 			return code(methodName, recClass.getIdentifier(recIndex), argClass.getIdentifier(argIndex),lb.toString(arg));
 		}		
+
+		@Override
+		public Command<T> remap(Remapper r) {
+			int i = r.remap(recClass, recIndex);
+			int j = r.remap(argClass, argIndex);
+			if (i == recIndex && j == argIndex) return this;
+			if (i == Remapper.MISSING || j == Remapper.MISSING) return null;
+			return new CommandMP<>(recClass, argClass, i, j, arg, refFunc, sutFunc, methodName);
+		}
+
+		@Override
+		public String getKind() {
+			return methodName;
+		}
+
+		@Override
+		public Object getReceiver() {
+			return recClass.getRefObject(recIndex);
+		}
 	}
 	
 	public static class Command3<R,S,T,U,V,W> implements Command<T> {
 		private final TestClass<R,S> testClass;
-		private final int index;
-		private final U arg1;
-		private final V arg2;
-		private final W arg3;
+		private int index;
+		private U arg1;
+		private V arg2;
+		private W arg3;
 		protected final Function4<R,U,V,W,Result<T>> refFunc;
 		protected final Function4<S,U,V,W,Result<T>> sutFunc;
 		protected final String methodName;
@@ -378,6 +586,14 @@ public interface Command<T> {
 			methodName = mn;
 		}
 
+		Command3<R,S,T,U,V,W> set(int i, U a, V b, W c) {
+			index = i;
+			arg1 = a;
+			arg2 = b;
+			arg3 = c;
+			return this;
+		}
+
 		@Override
 		public Result<T> execute(boolean asReference) {
 			if (asReference) {
@@ -394,6 +610,24 @@ public interface Command<T> {
 					lb.toString(arg2), 
 					lb.toString(arg3));
 		}		
+
+		@Override
+		public Command<T> remap(Remapper r) {
+			int i = r.remap(testClass, index);
+			if (i == index) return this;
+			if (i == Remapper.MISSING) return null;
+			return new Command3<>(testClass, i, arg1, arg2, arg3, refFunc, sutFunc, methodName);
+		}
+
+		@Override
+		public String getKind() {
+			return methodName;
+		}
+
+		@Override
+		public Object getReceiver() {
+			return testClass.getRefObject(index);
+		}
 	}
 
 }
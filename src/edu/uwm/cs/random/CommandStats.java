@@ -0,0 +1,203 @@
+package edu.uwm.cs.random;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Statistics of the commands executed in random testing, grouped by
+ * the kind of command (see {@link Command#getKind()}): how many were executed,
+ * how long the reference and SUT executions took, and how many threw exceptions.
+ * Latencies are kept in histograms with power-of-two buckets, so recording
+ * an execution does not allocate.
+ * Statistics are not synchronized: each is updated by one thread.
+ */
+public class CommandStats {
+	private static final int BUCKETS = 64;
+
+	/**
+	 * Statistics for one kind of command.
+	 */
+	public static class KindStats {
+		private final String kind;
+		private long count;
+		private long refNanos, sutNanos;
+		private long refExceptions, sutExceptions;
+		private final long[] refHistogram = new long[BUCKETS];
+		private final long[] sutHistogram = new long[BUCKETS];
+
+		KindStats(String k) {
+			kind = k;
+		}
+
+		private static int bucket(long nanos) {
+			return nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+		}
+
+		void record(long refTime, boolean refException, long sutTime, boolean sutException) {
+			++count;
+			refNanos += refTime;
+			sutNanos += sutTime;
+			if (refException) ++refExceptions;
+			if (sutException) ++sutExceptions;
+			++refHistogram[Math.min(bucket(refTime), BUCKETS-1)];
+			++sutHistogram[Math.min(bucket(sutTime), BUCKETS-1)];
+		}
+
+		void add(KindStats other) {
+			count += other.count;
+			refNanos += other.refNanos;
+			sutNanos += other.sutNanos;
+			refExceptions += other.refExceptions;
+			sutExceptions += other.sutExceptions;
+			for (int b=0; b < BUCKETS; ++b) {
+				refHistogram[b] += other.refHistogram[b];
+				sutHistogram[b] += other.sutHistogram[b];
+			}
+		}
+
+		public String getKind() { return kind; }
+		public long getCount() { return count; }
+		public long getRefNanos() { return refNanos; }
+		public long getSUTNanos() { return sutNanos; }
+		public long getRefExceptions() { return refExceptions; }
+		public long getSUTExceptions() { return sutExceptions; }
+
+		/**
+		 * Return the latency histogram.  Bucket b counts executions
+		 * taking less than 2<sup>b</sup> nanoseconds (but at least 2<sup>b-1</sup>).
+		 * @param sut whether to return the histogram for the SUT rather than the reference
+		 * @return copy of the histogram
+		 */
+		public long[] getHistogram(boolean sut) {
+			return (sut ? sutHistogram : refHistogram).clone();
+		}
+
+		/**
+		 * Return an upper bound on the given quantile of execution times.
+		 * @param sut whether for the SUT rather than the reference
+		 * @param q quantile between 0 and 1
+		 * @return upper bound of the bucket containing the quantile, in nanoseconds
+		 */
+		public long getQuantileNanos(boolean sut, double q) {
+			long[] histogram = sut ? sutHistogram : refHistogram;
+			long rank = Math.max(1, (long)Math.ceil(q * count));
+			long seen = 0;
+			for (int b=0; b < BUCKETS; ++b) {
+				seen += histogram[b];
+				if (seen >= rank) return b >= 63 ? Long.MAX_VALUE : 1L << b;
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-20s %10d  ref %8.0f ns avg  SUT %8.0f ns avg, p50 < %s, p99 < %s  exceptions %d/%d",
+					kind, count, (double)refNanos / Math.max(1, count), (double)sutNanos / Math.max(1, count),
+					format(getQuantileNanos(true, 0.5)), format(getQuantileNanos(true, 0.99)),
+					refExceptions, sutExceptions);
+		}
+
+		private static String format(long nanos) {
+			if (nanos >= 1_000_000_000L) return (nanos / 1_000_000_000L) + " s";
+			if (nanos >= 1_000_000) return (nanos / 1_000_000) + " ms";
+			if (nanos >= 1_000) return (nanos / 1_000) + " us";
+			return nanos + " ns";
+		}
+	}
+
+	private final Map<String,KindStats> kinds = new LinkedHashMap<>();
+	private long startNanos = System.nanoTime();
+	private long elapsedNanos = -1; // fixed when merged
+	private long total;
+
+	/**
+	 * Record the execution of a command.
+	 * @param kind kind of command executed (see {@link Command#getKind()})
+	 * @param refTime nanoseconds taken by the reference implementation
+	 * @param refException whether the reference implementation threw an exception
+	 * @param sutTime nanoseconds taken by the SUT
+	 * @param sutException whether the SUT threw an exception
+	 */
+	public void record(String kind, long refTime, boolean refException, long sutTime, boolean sutException) {
+		KindStats ks = kinds.get(kind);
+		if (ks == null) {
+			ks = new KindStats(kind);
+			kinds.put(kind, ks);
+		}
+		ks.record(refTime, refException, sutTime, sutException);
+		++total;
+	}
+
+	/**
+	 * Add statistics from another run (e.g. another worker in a campaign).
+	 * The elapsed time is taken to be the longest of the two.
+	 * @param other statistics to add, must not be this
+	 */
+	public void add(CommandStats other) {
+		for (KindStats ks : other.kinds.values()) {
+			kinds.computeIfAbsent(ks.kind, KindStats::new).add(ks);
+		}
+		total += other.total;
+		elapsedNanos = Math.max(getElapsedNanos(), other.getElapsedNanos());
+	}
+
+	/**
+	 * Forget all statistics and start timing again.
+	 */
+	public void reset() {
+		kinds.clear();
+		total = 0;
+		elapsedNanos = -1;
+		startNanos = System.nanoTime();
+	}
+
+	public Set<String> getKinds() {
+		return Collections.unmodifiableSet(kinds.keySet());
+	}
+
+	/**
+	 * Return the statistics for a kind of command.
+	 * @param kind kind of command
+	 * @return statistics, or null if no commands of that kind were executed
+	 */
+	public KindStats get(String kind) {
+		return kinds.get(kind);
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public long getElapsedNanos() {
+		if (elapsedNanos >= 0) return elapsedNanos;
+		return System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * Return the number of commands executed per second since the statistics were started.
+	 * @return throughput
+	 */
+	public double getCommandsPerSecond() {
+		return total * 1e9 / Math.max(1, getElapsedNanos());
+	}
+
+	/**
+	 * Return a report of the statistics, one line per kind
+	 * after a summary line, with the kinds taking the most time first.
+	 * @return lines of the report
+	 */
+	public List<String> report() {
+		List<String> result = new ArrayList<>();
+		result.add(String.format("%d commands in %.1f s (%.0f/s)", total, getElapsedNanos() / 1e9, getCommandsPerSecond()));
+		List<KindStats> sorted = new ArrayList<>(kinds.values());
+		Collections.sort(sorted, (k1,k2) -> Long.compare(k2.refNanos + k2.sutNanos, k1.refNanos + k1.sutNanos));
+		for (KindStats ks : sorted) {
+			result.add(ks.toString());
+		}
+		return result;
+	}
+}
@@ -18,6 +18,14 @@ public class ExceptionResult<T> implements Result<T> {
 		reason = exc;
 	}
 
+	/**
+	 * Return the exception that was thrown.
+	 * @return exception, or null if not specific
+	 */
+	public Throwable getReason() {
+		return reason;
+	}
+
 	@Override
 	public T getValue() {
 		return null;
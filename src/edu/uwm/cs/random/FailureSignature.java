@@ -0,0 +1,103 @@
+package edu.uwm.cs.random;
+
+import java.util.Objects;
+
+/**
+ * What a failure looks like, regardless of the sequence that led to it:
+ * the kind of the command that diverged, the kinds of result expected
+ * and obtained (e.g. {@link NormalResult} or {@link ExceptionResult}),
+ * and the classes of the exceptions, if any.
+ * Failures with the same signature are usually the same bug,
+ * so only one reproducer (the shortest) is kept for each signature.
+ * @see TestGenWriter
+ */
+class FailureSignature {
+	private final String kind;
+	private final String expectedKind, actualKind; // actualKind is null for a timeout
+	private final boolean expectedThrew, actualThrew;
+	private final Class<?> expectedException, actualException; // null if none or not specific
+
+	/**
+	 * Create the signature for a failure.
+	 * @param k kind of the command that diverged
+	 * @param expected expected result
+	 * @param actual result of the SUT, or null if it timed out
+	 */
+	FailureSignature(String k, Result<?> expected, Result<?> actual) {
+		kind = k;
+		expectedKind = kindOf(expected);
+		actualKind = kindOf(actual);
+		expectedThrew = expected instanceof ExceptionResult<?>;
+		actualThrew = actual instanceof ExceptionResult<?>;
+		expectedException = exceptionOf(expected);
+		actualException = exceptionOf(actual);
+	}
+
+	private static String kindOf(Result<?> r) {
+		return r == null ? null : r.getClass().getSimpleName();
+	}
+
+	private static Class<?> exceptionOf(Result<?> r) {
+		if (!(r instanceof ExceptionResult<?>)) return null;
+		Throwable reason = ((ExceptionResult<?>)r).getReason();
+		return reason == null ? null : reason.getClass();
+	}
+
+	private static String exceptionName(Class<?> exc) {
+		return exc == null ? "Exception" : exc.getSimpleName();
+	}
+
+	/**
+	 * Return a name for a test method reproducing this failure,
+	 * made from the kind of command and how the SUT diverged:
+	 * the simple name of the exception it threw, "No" followed by the name
+	 * of the exception it should have thrown, "Timeout", or else "WrongResult".
+	 * For example "testRemove_NullPointerException" or "testNewArrayList_WrongResult".
+	 * Different signatures may have the same name.
+	 * @return method name
+	 */
+	String getMethodName() {
+		StringBuilder sb = new StringBuilder("test");
+		boolean upper = true;
+		for (int i=0; kind != null && i < kind.length(); ++i) {
+			char ch = kind.charAt(i);
+			if (ch < 128 && Character.isLetterOrDigit(ch)) {
+				sb.append(upper ? Character.toUpperCase(ch) : ch);
+				upper = false;
+			} else {
+				upper = true;
+			}
+		}
+		sb.append('_');
+		if (actualKind == null) sb.append("Timeout");
+		else if (actualThrew) sb.append(exceptionName(actualException));
+		else if (expectedThrew) sb.append("No").append(exceptionName(expectedException));
+		else sb.append("WrongResult");
+		return sb.toString();
+	}
+
+	@Override
+	public boolean equals(Object x) {
+		if (!(x instanceof FailureSignature)) return false;
+		FailureSignature other = (FailureSignature)x;
+		return Objects.equals(kind, other.kind) &&
+				Objects.equals(expectedKind, other.expectedKind) && Objects.equals(actualKind, other.actualKind) &&
+				expectedException == other.expectedException && actualException == other.actualException;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(kind, expectedKind, actualKind, expectedException, actualException);
+	}
+
+	private static String describe(String kind, Class<?> exc) {
+		if (exc == null) return kind;
+		return kind + " (" + exc.getName() + ")";
+	}
+
+	@Override
+	public String toString() {
+		return kind + ": expected " + describe(expectedKind, expectedException) + ", got " +
+				(actualKind == null ? "timeout" : describe(actualKind, actualException));
+	}
+}
@@ -0,0 +1,110 @@
+package edu.uwm.cs.random;
+
+import java.util.Arrays;
+
+/**
+ * A map from objects (compared by identity) to non-negative indices,
+ * used to find the index of a registered object.  Unlike an {@link java.util.IdentityHashMap},
+ * a lookup does not box the index, and clearing takes constant time
+ * however large the table has grown: each entry is stamped with the generation
+ * in which it was put, and clearing starts a new generation, after which
+ * entries with older stamps count as empty.
+ * Stale keys are not forgotten until their slots are reused or the table is resized,
+ * so objects of earlier sequences may be kept alive a little longer.
+ * The table uses open addressing with linear probing, in parallel arrays.
+ */
+class IdentityIndex {
+	private Object[] keys;
+	private int[] values;
+	private int[] stamps; // an entry is present only if its stamp is the current generation
+	private int generation = 1;
+	private int size;
+
+	IdentityIndex() {
+		this(16);
+	}
+
+	/**
+	 * Create an empty index.
+	 * @param capacity initial capacity, must be a power of two
+	 */
+	IdentityIndex(int capacity) {
+		keys = new Object[capacity];
+		values = new int[capacity];
+		stamps = new int[capacity];
+	}
+
+	private static int hash(Object key, int mask) {
+		int h = System.identityHashCode(key) * 0x9E3779B9; // spread the low bits
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Return the index of an object.
+	 * @param key object to look up
+	 * @return index, or -1 if the object is not in the map
+	 */
+	int get(Object key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key, mask); stamps[i] == generation; i = (i+1) & mask) {
+			if (keys[i] == key) return values[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * Set the index of an object.
+	 * @param key object, must not be null
+	 * @param value non-negative index
+	 */
+	void put(Object key, int value) {
+		if ((size+1)*2 > keys.length) resize();
+		int mask = keys.length - 1;
+		int i = hash(key, mask);
+		for (; stamps[i] == generation; i = (i+1) & mask) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		stamps[i] = generation;
+		++size;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Remove all entries, in constant time.
+	 */
+	void clear() {
+		size = 0;
+		if (++generation == 0) {
+			// wrapped around: old stamps could be mistaken for current ones
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	private void resize() {
+		Object[] oldKeys = keys;
+		int[] oldValues = values;
+		int[] oldStamps = stamps;
+		int n = oldKeys.length * 2;
+		keys = new Object[n];
+		values = new int[n];
+		stamps = new int[n];
+		int mask = n - 1;
+		for (int j=0; j < oldKeys.length; ++j) {
+			if (oldStamps[j] != generation) continue;
+			int i = hash(oldKeys[j], mask);
+			while (stamps[i] == generation) i = (i+1) & mask;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+			stamps[i] = generation;
+		}
+	}
+}
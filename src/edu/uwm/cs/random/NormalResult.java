@@ -65,6 +65,36 @@ public class NormalResult<T> implements Result<T> {
 		return (Result<T>) nullResult;
 	}
 	
+	private static final int SMALL_MIN = -128, SMALL_MAX = 127;
+	private static final NormalResult<?>[] smallResults = new NormalResult<?>[SMALL_MAX - SMALL_MIN + 1];
+	private static final NormalResult<?> trueResult = new NormalResult<Boolean>(Boolean.TRUE);
+	private static final NormalResult<?> falseResult = new NormalResult<Boolean>(Boolean.FALSE);
+	static {
+		for (int i=SMALL_MIN; i <= SMALL_MAX; ++i) {
+			smallResults[i - SMALL_MIN] = new NormalResult<Integer>(i);
+		}
+	}
+
+	/**
+	 * Return a normal result for the given value.
+	 * Results for common values (null, booleans and small integers)
+	 * are shared rather than allocated each time.
+	 * @param value value returned
+	 * @return normal result for this value
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Result<T> of(T value) {
+		if (value == null) return (Result<T>) nullResult;
+		if (value instanceof Boolean) {
+			return (Result<T>)(((Boolean)value).booleanValue() ? trueResult : falseResult);
+		}
+		if (value instanceof Integer) {
+			int i = (Integer)value;
+			if (i >= SMALL_MIN && i <= SMALL_MAX) return (Result<T>) smallResults[i - SMALL_MIN];
+		}
+		return new NormalResult<T>(value);
+	}
+
 	/**
 	 * The shared void return result object.
 	 */
@@ -83,4 +83,22 @@ public class ObjectChoiceResult<R, S> implements Result<Union<R, S>> {
 		return false;
 	}
 
+	@Override
+	public boolean includesAlso(Result<Union<R,S>> x) {
+		if (delegate == null) return includes(x);
+		return delegate.includesAlso(x);
+	}
+
+	@Override
+	public boolean allows(Result<Union<R,S>> x) {
+		if (!(x instanceof NormalResult<?>)) return false;
+		if (x.getValue() == null) return possibilities.contains(null);
+		S sObject = x.getValue().getS();
+		for (R rObject : possibilities) {
+			int i = desc.indexOf(rObject);
+			if (i >= 0 && desc.hasSUTObject(i) && sObject == desc.getSUTObject(i)) return true;
+		}
+		return false;
+	}
+
 }
@@ -57,25 +57,40 @@ public class ObjectResult<R, S> extends NormalResult<Union<R, S>> {
 	
 	@Override
 	public boolean includes(Result<Union<R,S>> x) {
+		return check(x, true);
+	}
+
+	@Override
+	public boolean includesAlso(Result<Union<R,S>> x) {
+		return check(x, false);
+	}
+
+	/**
+	 * Check the result, registering a new object.
+	 * @param x result to check
+	 * @param record whether to record how it was checked, for {@link #genAssert}
+	 * @return true if the result matches
+	 */
+	private boolean check(Result<Union<R,S>> x, boolean record) {
 		if (super.getValue() == null) return super.includes(x);
 		R ref = value.getR();
 		int index = desc.indexOf(ref);
-		if (index == -1) {
+		if (index == -1 && record) {
 			newObjectResult = true; // do it before checking otherValue
 		}
 		if (!(x instanceof NormalResult<?>)) {
-			sutHasException = true;
+			if (record) sutHasException = true;
 			return false;
 		}
 		Union<R,S> otherValue = x.getValue();
 		if (otherValue == null) {
-			sutIsNull = true;
+			if (record) sutIsNull = true;
 			return false;
 		}
 		S sut = otherValue.getS();
-		if (index == -1) {
+		if (index == -1 || !desc.hasSUTObject(index)) {
 			desc.register(ref, sut);
-			sutHasValue = true;
+			if (record) sutHasValue = true;
 			return true;
 		} else {
 			return sut == desc.getSUTObject(index);
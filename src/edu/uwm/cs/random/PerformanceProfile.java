@@ -0,0 +1,174 @@
+package edu.uwm.cs.random;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution times of commands in the reference implementation and the SUT,
+ * grouped by kind of command and by the size of the structure the command is applied to,
+ * used to detect commands whose cost in the SUT grows faster than in the reference.
+ * For example, if the SUT computes size() by counting elements while the reference
+ * keeps a count, the ratio of SUT time to reference time grows linearly with size.
+ * <p>
+ * Sizes are grouped in power-of-two buckets.  For each bucket, we compare the median
+ * times, which are robust to the occasional garbage collection or compilation.
+ * A kind of command diverges if the ratio of medians grows by at least
+ * {@link #MIN_GROWTH} from the smallest to the largest bucket with enough samples,
+ * and the slope of the log of the ratio against the log of the size is at least {@link #MIN_SLOPE}.
+ */
+public class PerformanceProfile {
+	private static final int BUCKETS = 33;
+
+	/** Number of samples needed in a bucket for it to be used. */
+	public static final int MIN_SAMPLES = 10;
+	/** Smallest range of sizes (in powers of two) over which growth is checked. */
+	public static final int MIN_RANGE = 4;
+	/** Smallest growth of the SUT/reference ratio counted as divergence. */
+	public static final double MIN_GROWTH = 4.0;
+	/** Smallest (log-log) slope of the ratio counted as divergence. */
+	public static final double MIN_SLOPE = 0.25;
+
+	/**
+	 * A kind of command whose relative cost in the SUT grows with size.
+	 */
+	public static class Divergence {
+		private final String kind;
+		private final long smallSize, largeSize;
+		private final double smallRatio, largeRatio;
+		private final double slope;
+
+		Divergence(String k, long ss, double sr, long ls, double lr, double sl) {
+			kind = k;
+			smallSize = ss;
+			smallRatio = sr;
+			largeSize = ls;
+			largeRatio = lr;
+			slope = sl;
+		}
+
+		public String getKind() { return kind; }
+		public double getGrowth() { return largeRatio / smallRatio; }
+		public double getSlope() { return slope; }
+
+		@Override
+		public String toString() {
+			return String.format("%s: SUT/reference time ratio %.1f at size < %d but %.1f at size < %d (growing like size^%.1f)",
+					kind, smallRatio, smallSize, largeRatio, largeSize, slope);
+		}
+	}
+
+	private static class Samples {
+		long[] ref = new long[16];
+		long[] sut = new long[16];
+		int count;
+
+		void add(long r, long s) {
+			if (count == ref.length) {
+				ref = Arrays.copyOf(ref, count*2);
+				sut = Arrays.copyOf(sut, count*2);
+			}
+			ref[count] = r;
+			sut[count] = s;
+			++count;
+		}
+
+		private static double median(long[] xs, int n) {
+			long[] sorted = Arrays.copyOf(xs, n);
+			Arrays.sort(sorted);
+			if (n % 2 == 1) return sorted[n/2];
+			return (sorted[n/2-1] + sorted[n/2]) / 2.0;
+		}
+
+		double ratio() {
+			return Math.max(1, median(sut, count)) / Math.max(1, median(ref, count));
+		}
+	}
+
+	private final Map<String,Samples[]> kinds = new LinkedHashMap<>();
+
+	private static int bucket(int size) {
+		return size <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(size);
+	}
+
+	/**
+	 * Record the execution of a command.
+	 * @param kind kind of command
+	 * @param size size of the structure the command was applied to
+	 * @param refTime nanoseconds taken by the reference implementation
+	 * @param sutTime nanoseconds taken by the SUT
+	 */
+	public void record(String kind, int size, long refTime, long sutTime) {
+		Samples[] buckets = kinds.get(kind);
+		if (buckets == null) {
+			buckets = new Samples[BUCKETS];
+			kinds.put(kind, buckets);
+		}
+		int b = bucket(size);
+		if (buckets[b] == null) buckets[b] = new Samples();
+		buckets[b].add(refTime, sutTime);
+	}
+
+	/**
+	 * Forget all samples, e.g. those taken while the code was still being compiled.
+	 */
+	public void reset() {
+		kinds.clear();
+	}
+
+	/**
+	 * Check each kind of command for divergence.
+	 * @return divergences found, the fastest growing first
+	 */
+	public List<Divergence> findDivergences() {
+		List<Divergence> result = new ArrayList<>();
+		for (Map.Entry<String,Samples[]> e : kinds.entrySet()) {
+			Samples[] buckets = e.getValue();
+			List<Integer> used = new ArrayList<>();
+			for (int b=0; b < BUCKETS; ++b) {
+				if (buckets[b] != null && buckets[b].count >= MIN_SAMPLES) used.add(b);
+			}
+			if (used.size() < 2) continue;
+			int lo = used.get(0), hi = used.get(used.size()-1);
+			if (hi - lo < MIN_RANGE) continue;
+			// least squares fit of log2(ratio) against bucket (log2 of size)
+			double sx = 0, sy = 0, sxx = 0, sxy = 0;
+			for (int b : used) {
+				double y = Math.log(buckets[b].ratio()) / Math.log(2);
+				sx += b;
+				sy += y;
+				sxx += b*b;
+				sxy += b*y;
+			}
+			int n = used.size();
+			double slope = (n*sxy - sx*sy) / (n*sxx - sx*sx);
+			double small = buckets[lo].ratio(), large = buckets[hi].ratio();
+			if (large / small < MIN_GROWTH || slope < MIN_SLOPE) continue;
+			result.add(new Divergence(e.getKey(), 1L << lo, small, 1L << hi, large, slope));
+		}
+		Collections.sort(result, (d1,d2) -> Double.compare(d2.getGrowth(), d1.getGrowth()));
+		return result;
+	}
+
+	/**
+	 * Return a report of the ratio of SUT to reference time for each kind of command,
+	 * by size bucket (those with enough samples).
+	 * @return lines of the report
+	 */
+	public List<String> report() {
+		List<String> result = new ArrayList<>();
+		for (Map.Entry<String,Samples[]> e : kinds.entrySet()) {
+			StringBuilder sb = new StringBuilder(String.format("%-20s", e.getKey()));
+			Samples[] buckets = e.getValue();
+			for (int b=0; b < BUCKETS; ++b) {
+				if (buckets[b] == null || buckets[b].count < MIN_SAMPLES) continue;
+				sb.append(String.format("  <%d: %.1f", 1L << b, buckets[b].ratio()));
+			}
+			result.add(sb.toString());
+		}
+		return result;
+	}
+}
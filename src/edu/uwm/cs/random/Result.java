@@ -31,4 +31,27 @@ public interface Result<T> {
 	 * @return true if the object matches.
 	 */
 	public boolean includes(Result<T> other);
+
+	/**
+	 * Check if the result of another version of the SUT matches this one,
+	 * after {@link #includes(Result)} has checked the first version
+	 * (see {@link AbstractRandomTest#setSUTVersions(java.util.List)}).
+	 * Unlike includes, this must not change what {@link #genAssert} generates,
+	 * and it does not fix a choice: a choice already fixed is kept.
+	 * @param other result of another version
+	 * @return true if the object matches
+	 */
+	public default boolean includesAlso(Result<T> other) {
+		return includes(other);
+	}
+
+	/**
+	 * Check if the result of another version of the SUT is one of the
+	 * possibilities of a choice, even if a different one has been fixed.
+	 * @param other result of another version
+	 * @return true if this is a choice that allows the other result
+	 */
+	public default boolean allows(Result<T> other) {
+		return false;
+	}
 }
@@ -0,0 +1,195 @@
+package edu.uwm.cs.random;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Shrink a failing sequence of commands using delta debugging (ddmin):
+ * the sequence is split into parts, and we try executing (with fresh objects)
+ * each part, and each sequence with a part removed.  If any of these still fails,
+ * we continue with the smallest failing one, otherwise we split into smaller parts,
+ * until removing any single command makes the failure go away.
+ * <p>
+ * Candidates are executed in parallel, each by a helper instance of the random test
+ * that has regenerated the failing sequence from its seed, so that its commands
+ * refer to its own registered objects.  If helpers cannot be created, the candidates are
+ * executed one at a time by the instance that found the failure.
+ * A helper whose candidate does not terminate is abandoned.
+ * While helpers work, the timer of the instance that found the failure is
+ * deferred, since shrinking as a whole may take much longer than one command.
+ */
+class Shrinker {
+	private static final long POLL_MILLIS = 50;
+
+	private final AbstractRandomTest<?,?> main;
+	private final Supplier<? extends AbstractRandomTest<?,?>> factory;
+	private final List<AbstractRandomTest<?,?>> helpers = new ArrayList<>();
+	private BlockingQueue<AbstractRandomTest<?,?>> available;
+	private ExecutorService executor;
+
+	/**
+	 * Prepare to shrink the current failing sequence of a random test.
+	 * @param m instance with the failing sequence, prepared for shrinking
+	 * @param f source of helper instances, may be null or return null
+	 */
+	Shrinker(AbstractRandomTest<?,?> m, Supplier<? extends AbstractRandomTest<?,?>> f) {
+		main = m;
+		factory = f;
+	}
+
+	private void startHelpers() {
+		if (factory == null) return;
+		int n = Runtime.getRuntime().availableProcessors();
+		if (n < 2) return;
+		for (int i=0; i < n; ++i) {
+			// this thread executes the sequence again for the helper
+			main.deferTimer(main.getFailureSize() + 1);
+			AbstractRandomTest<?,?> helper = main.makeHelper(factory.get());
+			if (helper == null) break;
+			helpers.add(helper);
+		}
+		if (helpers.isEmpty()) return;
+		available = new ArrayBlockingQueue<>(helpers.size(), false, helpers);
+		executor = Executors.newFixedThreadPool(helpers.size(), (r) -> {
+			Thread t = new Thread(r, "random-test-shrinker");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	private void stopHelpers() {
+		if (executor != null) executor.shutdownNow();
+		for (AbstractRandomTest<?,?> helper : helpers) {
+			helper.cancelTimer();
+		}
+	}
+
+	private boolean allStuck() {
+		for (AbstractRandomTest<?,?> helper : helpers) {
+			if (!helper.isStuck()) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Try each candidate, returning the results.
+	 * @param candidates candidates to try
+	 * @return for each candidate, the prefix that failed, or null if it passed
+	 */
+	private List<List<Integer>> evaluate(List<List<Integer>> candidates) {
+		List<List<Integer>> results = new ArrayList<>();
+		if (executor == null) {
+			for (List<Integer> c : candidates) {
+				results.add(main.tryCandidate(c));
+			}
+			return results;
+		}
+		int n = candidates.size();
+		AbstractRandomTest<?,?>[] assigned = new AbstractRandomTest<?,?>[n];
+		List<Future<List<Integer>>> futures = new ArrayList<>();
+		for (int i=0; i < n; ++i) {
+			final int index = i;
+			final List<Integer> candidate = candidates.get(i);
+			futures.add(executor.submit(() -> {
+				AbstractRandomTest<?,?> helper = available.take();
+				assigned[index] = helper;
+				List<Integer> result = helper.tryCandidate(candidate);
+				if (!helper.isStuck()) available.put(helper);
+				return result;
+			}));
+		}
+		for (int i=0; i < n; ++i) {
+			List<Integer> result = null;
+			for (;;) {
+				main.deferTimer(1);
+				try {
+					result = futures.get(i).get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					break;
+				} catch (TimeoutException e) {
+					AbstractRandomTest<?,?> helper = assigned[i];
+					if (helper != null && helper.isStuck()) break;
+					if (allStuck()) break;
+				} catch (ExecutionException e) {
+					break;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			results.add(result);
+		}
+		return results;
+	}
+
+	private static List<List<Integer>> split(List<Integer> list, int parts) {
+		List<List<Integer>> result = new ArrayList<>();
+		int n = list.size();
+		for (int i=0; i < parts; ++i) {
+			int from = i * n / parts;
+			int to = (i+1) * n / parts;
+			if (from < to) result.add(new ArrayList<>(list.subList(from, to)));
+		}
+		return result;
+	}
+
+	private static List<Integer> complement(List<Integer> list, List<Integer> part) {
+		List<Integer> result = new ArrayList<>(list);
+		result.removeAll(part);
+		return result;
+	}
+
+	/**
+	 * Find a small subsequence of the failing sequence that still fails.
+	 * @return positions of the commands in the subsequence, in order
+	 */
+	List<Integer> shrink() {
+		List<Integer> current = new ArrayList<>();
+		int length = main.getFailureSize();
+		for (int k=0; k < length; ++k) current.add(k);
+		try {
+			startHelpers();
+			int granularity = 2;
+			while (current.size() >= 2) {
+				if (executor != null && allStuck()) break;
+				List<List<Integer>> parts = split(current, granularity);
+				List<List<Integer>> candidates = new ArrayList<>(parts);
+				if (parts.size() > 2) {
+					for (List<Integer> part : parts) {
+						candidates.add(complement(current, part));
+					}
+				}
+				List<List<Integer>> results = evaluate(candidates);
+				List<Integer> best = null;
+				int bestIndex = -1;
+				for (int i=0; i < results.size(); ++i) {
+					List<Integer> r = results.get(i);
+					if (r != null && (best == null || r.size() < best.size())) {
+						best = r;
+						bestIndex = i;
+					}
+				}
+				if (best != null && best.size() < current.size()) {
+					current = best;
+					// a failing part: start over; a failing complement: keep the granularity
+					granularity = bestIndex < parts.size() ? 2 : Math.max(granularity-1, 2);
+				} else if (granularity >= current.size()) {
+					break;
+				} else {
+					granularity = Math.min(granularity*2, current.size());
+				}
+			}
+		} finally {
+			stopHelpers();
+		}
+		return current;
+	}
+}
@@ -65,4 +65,15 @@ public interface TestClass<R, S> {
 	 * @return SUT object, or null if i is negative
 	 */
 	public S getSUTObject(int i);
+
+	/**
+	 * Return whether a SUT object has been registered for an index.
+	 * When several versions of the SUT are tested at once, the reference object is registered
+	 * when checking the first version, and the SUT objects of the other versions afterwards.
+	 * @param i index, must not be negative
+	 * @return whether {@link #getSUTObject(int)} can be called with this index
+	 */
+	public default boolean hasSUTObject(int i) {
+		return i < size();
+	}
 }
@@ -0,0 +1,223 @@
+package edu.uwm.cs.random;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file to which failing tests are written as they are found,
+ * each as its own method of one TestGen class, so that testing can
+ * continue after a failure (see {@link AbstractRandomTest#OUTPUT_PROPERTY}).
+ * <p>
+ * Failures are bucketed by their {@link FailureSignature}: for each signature,
+ * only the shortest reproducer is kept, with a count of how many times
+ * a failure with that signature was found.  At most a fixed number of signatures
+ * are kept; failures with other signatures are only counted.
+ * So memory use and the size of the file are bounded however long testing goes on.
+ * The file is rewritten (through a buffer) whenever a signature is added
+ * or gets a shorter reproducer, so it is complete even if testing is cut short.
+ * Workers of a campaign may add failures at the same time.
+ */
+class TestGenWriter implements Closeable {
+
+	/**
+	 * The failures with one signature.
+	 */
+	private static class Bucket {
+		final String name;
+		List<String> comments;
+		List<String> lines;
+		int length; // number of commands, which may differ from the number of lines
+		long hits;
+
+		Bucket(String n) {
+			name = n;
+		}
+	}
+
+	private final String filename;
+	private final String header;
+	private final int limit;
+	private final Map<FailureSignature,Bucket> buckets = new LinkedHashMap<>();
+	private final Set<String> names = new HashSet<>();
+	private long others; // failures whose signatures were not kept
+	private boolean closed;
+
+	/**
+	 * Create the file, with no test methods yet.
+	 * @param filename name of file to write
+	 * @param test random test whose imports and helper methods are written
+	 * @param max maximum number of signatures to keep
+	 * @throws IOException if the file cannot be created
+	 */
+	TestGenWriter(String filename, AbstractRandomTest<?,?> test, int max) throws IOException {
+		this.filename = filename;
+		limit = max;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (PrintStream out = new PrintStream(bytes)) {
+			test.printHeader(out);
+		}
+		header = bytes.toString();
+		write();
+	}
+
+	String getFilename() {
+		return filename;
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Return the number of signatures kept.
+	 * @return number of distinct failures
+	 */
+	synchronized int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Return whether the maximum number of signatures has been reached.
+	 * @return whether no more signatures will be kept
+	 */
+	synchronized boolean isFull() {
+		return buckets.size() >= limit;
+	}
+
+	/**
+	 * Return whether a failure would be kept, if its reproducer were
+	 * no longer than the given length.  A failure that would not be kept
+	 * need not be shrunk: it can just be counted.
+	 * @param sig signature of failure
+	 * @param length number of commands in reproducer
+	 * @return whether the signature is new (and there is room for it)
+	 * or the reproducer is shorter than the one kept for the signature
+	 */
+	synchronized boolean wants(FailureSignature sig, int length) {
+		if (closed) return false;
+		Bucket b = buckets.get(sig);
+		if (b == null) return !isFull();
+		return b.length > length;
+	}
+
+	/**
+	 * Count a failure without a reproducer.
+	 * @param sig signature of failure
+	 */
+	synchronized void hit(FailureSignature sig) {
+		hit(sig, 1);
+	}
+
+	/**
+	 * Count failures without reproducers.
+	 * @param sig signature of failures
+	 * @param n number of failures
+	 */
+	synchronized void hit(FailureSignature sig, long n) {
+		Bucket b = buckets.get(sig);
+		if (b == null) others += n;
+		else b.hits += n;
+	}
+
+	/**
+	 * Count a failure, keeping its reproducer if the signature is new
+	 * or the reproducer is shorter than the one kept, and rewrite the file if so.
+	 * @param sig signature of failure
+	 * @param length number of commands in the reproducer
+	 * @param comments lines of comment to write before the method
+	 * @param lines body of the method
+	 * @return whether the signature is new
+	 */
+	synchronized boolean add(FailureSignature sig, int length, List<String> comments, List<String> lines) {
+		if (!wants(sig, length)) {
+			hit(sig);
+			return false;
+		}
+		Bucket b = buckets.get(sig);
+		boolean added = b == null;
+		if (added) {
+			String name = sig.getMethodName();
+			for (int i=2; !names.add(name); ++i) {
+				name = sig.getMethodName() + "_" + i;
+			}
+			b = new Bucket(name);
+			buckets.put(sig, b);
+		}
+		++b.hits;
+		b.comments = comments;
+		b.lines = lines;
+		b.length = length;
+		rewrite();
+		return added;
+	}
+
+	/**
+	 * Return a report of the signatures found, most frequent first.
+	 * @return lines of the report
+	 */
+	synchronized List<String> report() {
+		List<Map.Entry<FailureSignature,Bucket>> sorted = new ArrayList<>(buckets.entrySet());
+		Collections.sort(sorted, (e1,e2) -> Long.compare(e2.getValue().hits, e1.getValue().hits));
+		List<String> result = new ArrayList<>();
+		for (Map.Entry<FailureSignature,Bucket> e : sorted) {
+			Bucket b = e.getValue();
+			result.add(String.format("%8d  %s  %s", b.hits, b.name, e.getKey()));
+		}
+		if (others > 0) {
+			result.add(String.format("%8d  failures with other signatures", others));
+		}
+		return result;
+	}
+
+	private void rewrite() {
+		try {
+			write();
+		} catch (IOException e) {
+			System.err.println("Cannot write " + filename + ": " + e.getMessage());
+		}
+	}
+
+	private void write() throws IOException {
+		try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			out.print(header);
+			for (Map.Entry<FailureSignature,Bucket> e : buckets.entrySet()) {
+				Bucket b = e.getValue();
+				out.println();
+				out.println("\t// " + e.getKey() + " (found " + b.hits + (b.hits == 1 ? " time)" : " times)"));
+				for (String comment : b.comments) {
+					out.println("\t// " + comment);
+				}
+				out.println("\tpublic void " + b.name + "() {");
+				for (String line : b.lines) {
+					out.println("\t\t" + line);
+				}
+				out.println("\t}");
+			}
+			out.println("}");
+			if (others > 0) {
+				out.println("// " + others + " failures with other signatures were not kept.");
+			}
+		}
+	}
+
+	/**
+	 * Write the file with the final counts.  No more failures are kept after this.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) return;
+		closed = true;
+		rewrite();
+	}
+}
@@ -0,0 +1,132 @@
+package edu.uwm.cs.random;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The commands executed in the current sequence, with their expected results
+ * (needed to generate assertions) and the number of objects in each registry
+ * after each command (needed to remap objects when shrinking).
+ * The trace is stored in parallel arrays which are reused from one sequence to the next,
+ * so that recording a command does not allocate.
+ */
+class Trace {
+	private final int classes; // number of registered classes when started
+	private Command<?>[] commands;
+	private Result<?>[] results; // null for a command that timed out
+	private int[] sizes; // classes entries for each command
+	private int length;
+
+	/**
+	 * Create an empty trace.
+	 * @param capacity initial capacity
+	 * @param numClasses number of registered classes whose sizes are recorded
+	 */
+	Trace(int capacity, int numClasses) {
+		if (capacity < 1) capacity = 1;
+		classes = numClasses;
+		commands = new Command<?>[capacity];
+		results = new Result<?>[capacity];
+		sizes = new int[capacity * numClasses];
+	}
+
+	private void ensureCapacity() {
+		if (length < commands.length) return;
+		int n = commands.length * 2;
+		commands = Arrays.copyOf(commands, n);
+		results = Arrays.copyOf(results, n);
+		sizes = Arrays.copyOf(sizes, n * classes);
+	}
+
+	/**
+	 * Record a command.
+	 * @param c command executed
+	 * @param expected expected result, or null if the command timed out
+	 * @param registries registered classes whose sizes are recorded
+	 */
+	void add(Command<?> c, Result<?> expected, List<? extends TestClass<?,?>> registries) {
+		ensureCapacity();
+		commands[length] = c;
+		results[length] = expected;
+		int base = length * classes;
+		for (int j=0; j < classes; ++j) {
+			sizes[base + j] = registries.get(j).size();
+		}
+		++length;
+	}
+
+	/**
+	 * Forget all commands, keeping the space for reuse.
+	 * References are cleared so that objects of the old sequence can be collected.
+	 */
+	void clear() {
+		Arrays.fill(commands, 0, length, null);
+		Arrays.fill(results, 0, length, null);
+		length = 0;
+	}
+
+	/**
+	 * Forget the commands after the first ones.
+	 * @param n number of commands to keep
+	 */
+	void truncate(int n) {
+		if (n >= length) return;
+		Arrays.fill(commands, n, length, null);
+		Arrays.fill(results, n, length, null);
+		length = n;
+	}
+
+	int size() {
+		return length;
+	}
+
+	int getClasses() {
+		return classes;
+	}
+
+	boolean isEmpty() {
+		return length == 0;
+	}
+
+	Command<?> getCommand(int k) {
+		return commands[k];
+	}
+
+	/**
+	 * Return the number of objects registered for a class after a command,
+	 * or before the first command if k is -1.
+	 * @param k index of command, or -1
+	 * @param j index of registered class
+	 * @return number of objects registered
+	 */
+	int getSize(int k, int j) {
+		if (k < 0) return 0;
+		return sizes[k * classes + j];
+	}
+
+	/**
+	 * Generate the line of test code for a command.
+	 * @param k index of the command
+	 * @param lb literal builder to generate code
+	 * @return line of test code
+	 */
+	@SuppressWarnings("unchecked")
+	String getLine(int k, LiteralBuilder lb) {
+		String code = commands[k].code(lb);
+		if (results[k] == null) return code + "; // timeout";
+		return ((Result<Object>)results[k]).genAssert(lb, code);
+	}
+
+	/**
+	 * Return a copy of this trace (with the exact capacity needed).
+	 * @return new trace with the same contents
+	 */
+	Trace copy() {
+		Trace result = new Trace(length, classes);
+		System.arraycopy(commands, 0, result.commands, 0, length);
+		System.arraycopy(results, 0, result.results, 0, length);
+		System.arraycopy(sizes, 0, result.sizes, 0, length * classes);
+		result.length = length;
+		return result;
+	}
+}
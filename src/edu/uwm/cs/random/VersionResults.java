@@ -0,0 +1,77 @@
+package edu.uwm.cs.random;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The versions of the SUT that have failed when several are tested at once
+ * (see {@link AbstractRandomTest#setSUTVersions(java.util.List)}).
+ * A failed version is dropped: it is not executed any more.
+ * So is a version that makes a different choice than the first version
+ * where the reference implementation allows several results,
+ * since the reference implementation can only follow one choice.
+ * This record is shared by all the workers of a campaign,
+ * so that a version dropped by one worker is dropped by all.
+ */
+class VersionResults {
+
+	/**
+	 * How a version was dropped: the sequence in which it first failed (or made
+	 * a different choice), from which the failure can be reproduced with that version alone.
+	 */
+	static class Failure {
+		final int version;
+		final long seed;
+		final long sequence;
+		final int size;
+		final String kind;
+		final boolean hang;
+		final boolean choice; // a legal result, but not the choice made by the first version
+		List<String> notes, test; // set if reproduced with the version alone
+
+		Failure(int v, long seed, long sequence, int size, String kind, boolean hang, boolean choice) {
+			version = v;
+			this.seed = seed;
+			this.sequence = sequence;
+			this.size = size;
+			this.kind = kind;
+			this.hang = hang;
+			this.choice = choice;
+		}
+
+		@Override
+		public String toString() {
+			return (hang ? "hang in " : choice ? "different choice in " : "wrong result from ") + kind +
+					" (sequence " + sequence + " of size " + size + " from seed " + seed + ")";
+		}
+	}
+
+	private final ConcurrentMap<Integer,Failure> failures = new ConcurrentHashMap<>();
+
+	/**
+	 * Record the failure of a version, unless it has already failed.
+	 * @param f failure to record
+	 * @return whether this is the first failure of this version
+	 */
+	boolean drop(Failure f) {
+		return failures.putIfAbsent(f.version, f) == null;
+	}
+
+	boolean isDropped(int version) {
+		return failures.containsKey(version);
+	}
+
+	/**
+	 * Return the failure of a version.
+	 * @param version index of version
+	 * @return first failure recorded, or null if the version has not failed
+	 */
+	Failure get(int version) {
+		return failures.get(version);
+	}
+
+	int size() {
+		return failures.size();
+	}
+}
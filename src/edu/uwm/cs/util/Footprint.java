@@ -0,0 +1,216 @@
+package edu.uwm.cs.util;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimate the memory used by a data structure: the total
+ * size of all objects reachable from it through instance fields.
+ * Sizes come from {@link Instrumentation#getObjectSize(Object)} if this
+ * class was loaded as a Java agent (-javaagent with the jar of this library),
+ * and otherwise are estimated from the fields of each class using the HotSpot layout:
+ * an object header, the fields, and padding to a multiple of eight bytes.
+ * <p>
+ * Objects whose fields cannot be accessed reflectively
+ * (e.g. those inside java.util on Java 9 and later, unless the JVM is run with
+ * --add-opens java.base/java.util=ALL-UNNAMED) cannot be traversed:
+ * rather than return a size that is too small, measuring throws an {@link IncompleteException}.
+ * Classes, class loaders and threads are never counted.
+ */
+public class Footprint {
+	private static volatile Instrumentation instrumentation;
+
+	/**
+	 * Thrown if the size cannot be measured because the fields
+	 * of some object reached cannot be accessed.
+	 */
+	public static class IncompleteException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public IncompleteException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Entry point when loaded as a Java agent.
+	 * @param args ignored
+	 * @param inst instrumentation to use for object sizes
+	 */
+	public static void premain(String args, Instrumentation inst) {
+		instrumentation = inst;
+	}
+
+	public static void agentmain(String args, Instrumentation inst) {
+		instrumentation = inst;
+	}
+
+	private static final int REFERENCE_SIZE;
+	private static final int HEADER_SIZE;
+	private static final int ARRAY_HEADER_SIZE;
+	private static final int ALIGNMENT = 8;
+
+	static {
+		boolean compressed = true;
+		try {
+			com.sun.management.HotSpotDiagnosticMXBean bean =
+					ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+			compressed = Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+		} catch (RuntimeException|LinkageError e) {
+			// not HotSpot: assume the defaults
+		}
+		REFERENCE_SIZE = compressed ? 4 : 8;
+		HEADER_SIZE = compressed ? 12 : 16;
+		ARRAY_HEADER_SIZE = compressed ? 16 : 24;
+	}
+
+	private Footprint() {}
+
+	private static long align(long size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	private static int primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) return 8;
+		if (type == int.class || type == float.class) return 4;
+		if (type == short.class || type == char.class) return 2;
+		if (type == byte.class || type == boolean.class) return 1;
+		return REFERENCE_SIZE;
+	}
+
+	/**
+	 * Layout information for a (non-array) class.
+	 */
+	private static class Layout {
+		final long size;
+		final List<Field> references = new ArrayList<>();
+		Field inaccessible; // a reference field that cannot be traversed, or null
+
+		Layout(Class<?> clazz) {
+			long s = HEADER_SIZE;
+			for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+				for (Field f : c.getDeclaredFields()) {
+					if (Modifier.isStatic(f.getModifiers())) continue;
+					s += primitiveSize(f.getType());
+					if (f.getType().isPrimitive()) continue;
+					try {
+						f.setAccessible(true);
+						references.add(f);
+					} catch (RuntimeException e) {
+						// inaccessible module: measuring an instance will fail
+						if (inaccessible == null) inaccessible = f;
+					}
+				}
+			}
+			size = align(s);
+		}
+	}
+
+	private static final Map<Class<?>,Layout> layouts = Collections.synchronizedMap(new HashMap<>());
+
+	private static Layout getLayout(Class<?> clazz) {
+		Layout result = layouts.get(clazz);
+		if (result == null) {
+			result = new Layout(clazz);
+			layouts.put(clazz, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the size of the object itself, not including
+	 * any objects it refers to.
+	 * @param x object, must not be null
+	 * @return size in bytes
+	 */
+	public static long shallowSize(Object x) {
+		Instrumentation inst = instrumentation;
+		if (inst != null) return inst.getObjectSize(x);
+		Class<?> clazz = x.getClass();
+		if (clazz.isArray()) {
+			return align(ARRAY_HEADER_SIZE + (long)Array.getLength(x) * primitiveSize(clazz.getComponentType()));
+		}
+		return getLayout(clazz).size;
+	}
+
+	private static IncompleteException incomplete(Field f) {
+		String pkg = f.getDeclaringClass().getName();
+		pkg = pkg.substring(0, Math.max(pkg.lastIndexOf('.'), 0));
+		return new IncompleteException("cannot look inside " + f.getDeclaringClass().getName() + "." + f.getName() +
+				": run the JVM with --add-opens java.base/" + pkg + "=ALL-UNNAMED");
+	}
+
+	private static boolean isExcluded(Object x, Class<?>[] excluded) {
+		if (x instanceof Class<?> || x instanceof ClassLoader || x instanceof Thread) return true;
+		for (Class<?> c : excluded) {
+			if (c.isInstance(x)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Return the total size of all objects reachable from the roots.
+	 * Each object is counted once, even if reachable in several ways.
+	 * @param roots objects to start from, null roots are ignored
+	 * @param excluded classes of objects not to count or traverse,
+	 * for example the element type, to count only the structure itself.
+	 * @return total size in bytes
+	 * @throws IncompleteException if the fields of an object reached cannot be accessed
+	 */
+	public static long retainedSize(Object[] roots, Class<?>... excluded) {
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Object> worklist = new ArrayDeque<>();
+		for (Object root : roots) {
+			if (root != null && !isExcluded(root, excluded) && visited.add(root)) worklist.push(root);
+		}
+		long total = 0;
+		while (!worklist.isEmpty()) {
+			Object x = worklist.pop();
+			total += shallowSize(x);
+			Class<?> clazz = x.getClass();
+			if (clazz.isArray()) {
+				if (clazz.getComponentType().isPrimitive()) continue;
+				for (Object y : (Object[])x) {
+					if (y != null && !isExcluded(y, excluded) && visited.add(y)) worklist.push(y);
+				}
+			} else {
+				Layout layout = getLayout(clazz);
+				if (layout.inaccessible != null) throw incomplete(layout.inaccessible);
+				for (Field f : layout.references) {
+					Object y;
+					try {
+						y = f.get(x);
+					} catch (IllegalAccessException e) {
+						throw incomplete(f);
+					}
+					if (y != null && !isExcluded(y, excluded) && visited.add(y)) worklist.push(y);
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Return the total size of all objects reachable from the root.
+	 * @param root object to start from
+	 * @param excluded classes of objects not to count or traverse
+	 * @return total size in bytes
+	 * @throws IncompleteException if the fields of an object reached cannot be accessed
+	 * @see #retainedSize(Object[], Class...)
+	 */
+	public static long retainedSize(Object root, Class<?>... excluded) {
+		return retainedSize(new Object[]{root}, excluded);
+	}
+}
@@ -0,0 +1,141 @@
+package edu.uwm.cs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A tool to find where a (presumably stuck) thread is spending its time.
+ * It takes samples of the thread's stack and counts how many samples
+ * each frame appears in.  The hottest frames are those that appear in the most
+ * samples, and among those, the ones deepest in the stack.
+ * Frames are grouped by method, so that a loop spread over several lines
+ * counts as one frame; the line found in most samples is reported with it.
+ * Thus an infinite loop in a method shows that method first, while
+ * a slow method shows the slow method followed by the methods it spends time in.
+ * Frames of the testing framework and of reflection are not reported.
+ */
+public class StackSampler {
+	/**
+	 * The samples found in one method.
+	 */
+	private static class Method {
+		int count;
+		int depth;
+		final Map<StackTraceElement,Integer> lines = new HashMap<>();
+
+		StackTraceElement hottestLine() {
+			StackTraceElement best = null;
+			for (Map.Entry<StackTraceElement,Integer> e : lines.entrySet()) {
+				if (best == null || e.getValue() > lines.get(best)) best = e.getKey();
+			}
+			return best;
+		}
+	}
+
+	private final Thread thread;
+	private final Map<String,Method> methods = new HashMap<>();
+	private int samples = 0;
+	private StackTraceElement[] lastStack = new StackTraceElement[0];
+
+	public StackSampler(Thread t) {
+		thread = t;
+	}
+
+	/**
+	 * Take one sample of the thread's stack.
+	 */
+	public void sample() {
+		StackTraceElement[] stack = thread.getStackTrace();
+		if (stack.length == 0) return; // not running
+		++samples;
+		lastStack = stack;
+		int n = stack.length;
+		Set<String> seen = new HashSet<>();
+		for (int i=0; i < n; ++i) {
+			StackTraceElement frame = stack[i];
+			String key = frame.getClassName() + "." + frame.getMethodName();
+			if (!seen.add(key)) continue; // count recursion once
+			Method m = methods.get(key);
+			if (m == null) {
+				m = new Method();
+				methods.put(key, m);
+			}
+			++m.count;
+			m.depth = Math.max(m.depth, n-i);
+			m.lines.merge(frame, 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Take several samples of the thread's stack.
+	 * @param count number of samples to take
+	 * @param intervalMillis time between samples
+	 */
+	public void sample(int count, long intervalMillis) {
+		for (int i=0; i < count; ++i) {
+			if (i > 0) {
+				try {
+					Thread.sleep(intervalMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			sample();
+		}
+	}
+
+	/**
+	 * Return the number of (successful) samples taken.
+	 * @return number of samples
+	 */
+	public int getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Return the stack from the last sample.
+	 * @return last stack sampled, empty if no samples
+	 */
+	public StackTraceElement[] getLastStack() {
+		return lastStack;
+	}
+
+	private static boolean isFramework(StackTraceElement frame) {
+		String c = frame.getClassName();
+		return c.startsWith("junit.") || c.startsWith("edu.uwm.cs.junit.") ||
+				c.startsWith("java.lang.reflect.") || c.startsWith("java.lang.invoke.") || c.startsWith("sun.reflect.") ||
+				c.startsWith("jdk.internal.") || c.equals("java.lang.Thread") ||
+				c.startsWith("java.util.concurrent.");
+	}
+
+	/**
+	 * Return descriptions of the hottest methods sampled,
+	 * each with the percentage of samples it was found in
+	 * and the line in which it was found most often.
+	 * @param n maximum number of methods to return
+	 * @return list of descriptions, hottest first
+	 */
+	public List<String> hottest(int n) {
+		List<Method> hot = new ArrayList<>();
+		for (Method m : methods.values()) {
+			if (!isFramework(m.hottestLine())) hot.add(m);
+		}
+		Collections.sort(hot, (m1,m2) -> {
+			int c = m2.count - m1.count;
+			if (c != 0) return c;
+			return m2.depth - m1.depth;
+		});
+		List<String> result = new ArrayList<>();
+		for (Method m : hot) {
+			if (result.size() >= n) break;
+			result.add(String.format("%3d%% %s", 100 * m.count / samples, m.hottestLine()));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,89 @@
+package edu.uwm.cs.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simple robust statistics over samples (typically durations in nanoseconds).
+ * None of the methods modify the array passed in.
+ */
+public class Statistics {
+	private Statistics() {}
+
+	/**
+	 * Return the given quantile of the samples using the nearest-rank method.
+	 * @param samples values, must not be empty
+	 * @param q quantile between 0 and 1, e.g. 0.5 for the median.
+	 * @return smallest sample such that at least the fraction q of samples are
+	 * no larger.
+	 */
+	public static long quantile(long[] samples, double q) {
+		if (samples.length == 0) throw new IllegalArgumentException("no samples");
+		long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		int rank = (int)Math.ceil(q * sorted.length);
+		if (rank < 1) rank = 1;
+		return sorted[rank-1];
+	}
+
+	/**
+	 * Return the minimum of the samples.
+	 * @param samples values, must not be empty
+	 * @return minimum
+	 */
+	public static long min(long[] samples) {
+		if (samples.length == 0) throw new IllegalArgumentException("no samples");
+		long result = samples[0];
+		for (long x : samples) {
+			if (x < result) result = x;
+		}
+		return result;
+	}
+
+	/**
+	 * Return the median of the samples.
+	 * For an even number of samples, the average of the middle two.
+	 * @param samples values, must not be empty
+	 * @return median
+	 */
+	public static double median(long[] samples) {
+		if (samples.length == 0) throw new IllegalArgumentException("no samples");
+		long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		int n = sorted.length;
+		if (n % 2 == 1) return sorted[n/2];
+		return (sorted[n/2-1] + (double)sorted[n/2]) / 2;
+	}
+
+	/**
+	 * Return the median absolute deviation (MAD) of the samples
+	 * from their median.
+	 * @param samples values, must not be empty
+	 * @return MAD
+	 */
+	public static double mad(long[] samples) {
+		double median = median(samples);
+		double[] deviations = new double[samples.length];
+		for (int i=0; i < samples.length; ++i) {
+			deviations[i] = Math.abs(samples[i] - median);
+		}
+		Arrays.sort(deviations);
+		int n = deviations.length;
+		if (n % 2 == 1) return deviations[n/2];
+		return (deviations[n/2-1] + deviations[n/2]) / 2;
+	}
+
+	/**
+	 * Convert a list of boxed values to primitives.
+	 * @param values values, must not include null
+	 * @return array of the same values
+	 */
+	public static long[] toArray(List<Long> values) {
+		long[] result = new long[values.size()];
+		int i = 0;
+		for (long x : values) {
+			result[i++] = x;
+		}
+		return result;
+	}
+}
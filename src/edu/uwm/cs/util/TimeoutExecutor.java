@@ -1,36 +1,60 @@
 package edu.uwm.cs.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * An executor that executes a runnable if there is a timeout,
  * but the timeout can be repeatedly deferred (unlike {@link java.util.Timer}.
  * This executor can cause the JVM to stay alive unless it is canceled.
+ * <p>
+ * Deferring is cheap because it takes no lock and does not read the clock:
+ * it records the new amount of time and counts the deferral.
+ * The timer thread polls the count a few times per period, and starts the period
+ * again when it sees a new deferral.  Since a deferral is seen no earlier than it happens,
+ * the timeout never happens too early, but it may happen up to a quarter period late.
  */
 public class TimeoutExecutor {
+	private static final int RUNNING = 0, FIRING = 1, EXECUTED = 2, CANCELED = 3;
+	private static final int CHECKS = 4; // number of times the deferrals are checked each period
+
 	private final Runnable action;
-	private Thread myThread;
+	private final Thread myThread;
 	
-	private long timeoutDeadline; // when timeout should happen
-	private boolean executed = false;
+	private final AtomicLong deferrals = new AtomicLong();
+	private long timeoutMillis; // latest amount of time: published by counting the deferral
+	private final AtomicInteger state = new AtomicInteger(RUNNING);
 	
 	public TimeoutExecutor(Runnable timeoutAction, long milliseconds) {
 		action = timeoutAction;
-		timeoutDeadline = System.currentTimeMillis() + milliseconds;
+		timeoutMillis = milliseconds;
 		myThread = new Thread(() -> run());
 		myThread.start();
 	}
 
+	/**
+	 * Wait for the timer thread to finish deciding whether to time out.
+	 * This can only take a moment.
+	 * @return the state after any decision
+	 */
+	private int settledState() {
+		int s;
+		while ((s = state.get()) == FIRING) {
+			Thread.yield();
+		}
+		return s;
+	}
+
 	/** Change the timeout deadline to the given amount.
 	 * @param newMillis new amount of time to wait, must not be negative
 	 * @return if its too late: the timeout action has already executed
 	 */
 	public boolean defer(long newMillis) {
 		if (newMillis < 0) throw new IllegalArgumentException("cannot defer a negative time");
-		synchronized (myThread) {
-			if (executed) return false;
-			if (!myThread.isAlive()) return true;
-			timeoutDeadline = System.currentTimeMillis() + newMillis;
-		}
-		return true;
+		timeoutMillis = newMillis;
+		deferrals.incrementAndGet();
+		// if the timer thread decides to time out after this point, it will see the deferral
+		return settledState() != EXECUTED;
 	}
 	
 	/**
@@ -39,12 +63,12 @@ public class TimeoutExecutor {
 	 * @return false if its too late, the timeout action has already happened
 	 */
 	public boolean cancel() {
-		synchronized (myThread) {
-			if (executed) return false;
-			timeoutDeadline = -1;
-			if (!myThread.isAlive()) return true;
-			myThread.interrupt();
+		for (;;) {
+			int s = settledState();
+			if (s == EXECUTED) return false;
+			if (s == CANCELED || state.compareAndSet(RUNNING, CANCELED)) break;
 		}
+		myThread.interrupt();
 		return true;
 	}
 
@@ -53,11 +77,18 @@ public class TimeoutExecutor {
 	 * @return true if the timeout action has happened.
 	 */
 	public boolean executed() {
-		synchronized (myThread) {
-			return executed;
-		}
+		return settledState() == EXECUTED;
 	}
 	
+	/**
+	 * Return true if this timeout has been canceled.
+	 * A canceled timeout will never execute, even if its thread has not stopped yet.
+	 * @return true if canceled
+	 */
+	public boolean isCanceled() {
+		return state.get() == CANCELED;
+	}
+
 	/**
 	 * Return true if this timeout is still live.
 	 * @return true if still live
@@ -67,18 +98,28 @@ public class TimeoutExecutor {
 	}
 	
 	private void run() {
+		long seen = deferrals.get();
+		long start = System.currentTimeMillis();
 		try {
 			for (;;) {
-				long deadline;
-				synchronized (myThread) {
-					deadline = timeoutDeadline;
+				if (state.get() == CANCELED) return;
+				long current = deferrals.get();
+				long millis = timeoutMillis;
+				long now = System.currentTimeMillis();
+				if (current != seen) {
+					seen = current;
+					start = now;
+				}
+				long remaining = start + millis - now;
+				if (remaining <= 0) {
+					if (!state.compareAndSet(RUNNING, FIRING)) return;
+					if (deferrals.get() == seen) break;
+					state.set(RUNNING); // deferred just in time
+					continue;
 				}
-				if (deadline == -1) return;
-				long sleepTime = deadline - System.currentTimeMillis();
-				if (sleepTime < 0) break;
-				Thread.sleep(sleepTime);
+				Thread.sleep(Math.min(remaining, Math.max(1, millis / CHECKS)));
 			}
-			executed = true;
+			state.set(EXECUTED);
 			action.run();
 		} catch (InterruptedException e) {
 			// ignore